@@ -0,0 +1,80 @@
+package ch.uzh.ifi.hase.soprafs21.benchmark;
+
+import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
+import ch.uzh.ifi.hase.soprafs21.entity.Game;
+import ch.uzh.ifi.hase.soprafs21.entity.Message;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.GameDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.GameRoundDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * small per-entity operations done for every pushed update or chat message
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntityBenchmark {
+
+    private final Long[] ids = {
+            EntityType.USER.id(17, 0),
+            EntityType.GAME.id(4711, 0),
+            EntityType.GAME_ROUND.id(4711, 3),
+            EntityType.MESSAGE.id(123456, 0)
+    };
+
+    private Game game;
+    private User user;
+    private Message command;
+    private Message plain;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        game = Fixtures.votingGame(10);
+        user = Fixtures.user(42);
+        user.setCurrentGameId(game.getGameId());
+        command = new Message();
+        command.setSenderId(user.getUserId());
+        command.setText("/v @#" + user.getUserId() + " because it was the funniest");
+        plain = new Message();
+        plain.setSenderId(user.getUserId());
+        plain.setText("hey @all who is up for another round? @gm please start it");
+    }
+
+    @Benchmark
+    public int entityTypeGet() {
+        int sum = 0;
+        for (Long id : ids) sum += EntityType.get(id).ordinal();
+        return sum;
+    }
+
+    @Benchmark
+    public GameDTO convertGame() {
+        return DTOMapper.INSTANCE.convertEntityToGameDTO(game);
+    }
+
+    @Benchmark
+    public GameRoundDTO convertGameRound() {
+        return DTOMapper.INSTANCE.convertEntityToGameRoundDTO(game.getCurrentRound());
+    }
+
+    @Benchmark
+    public UserDTO convertUser() {
+        return DTOMapper.INSTANCE.convertEntityToUserDTO(user);
+    }
+
+    @Benchmark
+    public List<String> messageReferences() {
+        return plain.getReferences();
+    }
+
+    @Benchmark
+    public String messageCommand() {
+        return command.getCommand();
+    }
+}
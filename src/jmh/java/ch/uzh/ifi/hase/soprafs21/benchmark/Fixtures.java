@@ -0,0 +1,98 @@
+package ch.uzh.ifi.hase.soprafs21.benchmark;
+
+import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
+import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
+import ch.uzh.ifi.hase.soprafs21.entity.Game;
+import ch.uzh.ifi.hase.soprafs21.entity.GameRound;
+import ch.uzh.ifi.hase.soprafs21.entity.GameSettings;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * builds synthetic entities for the benchmarks, without a Spring context
+ */
+final class Fixtures {
+
+    private Fixtures() {}
+
+    static User user(long serial) {
+        User user = new User();
+        user.setUserId(EntityType.USER.id(serial, 0));
+        user.setUsername("player" + serial);
+        user.setPassword("password");
+        return user;
+    }
+
+    /**
+     * @param username
+     * @return a user without id, to be created by the UserService
+     */
+    static User newUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("password");
+        return user;
+    }
+
+    static GameSettings settings(int totalRounds, int maxPlayers) {
+        GameSettings settings = new GameSettings();
+        settings.setName("benchmark");
+        settings.setPassword("");
+        settings.setMaxPlayers(maxPlayers);
+        settings.setTotalRounds(totalRounds);
+        settings.setSubreddit("memes");
+        settings.setMemeType(MemeType.HOT);
+        settings.setMaxSuggestSeconds(60);
+        settings.setMaxVoteSeconds(60);
+        settings.setMaxAftermathSeconds(60);
+        return settings;
+    }
+
+    /**
+     * @param players number of players, including the game master
+     * @return a game in the lobby state
+     */
+    static Game lobby(int players) {
+        Game game = new Game().setGameId(EntityType.GAME.id(1, 0));
+        game.initialize(user(1));
+        game.adaptSettings(settings(3, players));
+        for (int i = 2; i <= players; i++) game.enrollPlayer(user(i), "");
+        // memes are normally taken over from the MemeCatalogue
+        List<String> memes = game.getGameSettings().getMemesFound();
+        for (int i = 0; i < 3; i++) memes.add("https://example.com/memes/" + i + ".jpg");
+        return game;
+    }
+
+    /**
+     * @param players number of players, including the game master
+     * @return a running game whose current round is in the vote phase,
+     * all players suggested and voted for their neighbour. the next deadline is far away.
+     */
+    static Game votingGame(int players) {
+        Game game = lobby(players);
+        game.closeLobby(true);
+        game.start();
+        game.update(); // queued -> starting
+        GameRound round = game.getCurrentRound();
+        round.nextPhase(); // suggest
+        List<Long> enrolled = game.getEnrolledPlayers();
+        for (Long player : enrolled) game.putSuggestion(player, "title of " + player);
+        round.nextPhase(); // vote
+        for (int i = 0; i < enrolled.size(); i++)
+            game.putVote(enrolled.get(i), enrolled.get((i + 1) % enrolled.size()));
+        setField(game, "advanceTargetTime", Long.MAX_VALUE);
+        return game;
+    }
+
+    static void setField(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ch.uzh.ifi.hase.soprafs21.benchmark;
+
+import ch.uzh.ifi.hase.soprafs21.constant.GameUpdateResponse;
+import ch.uzh.ifi.hase.soprafs21.entity.Game;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hot paths of the game engine: ticking, player lookups and scoring
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GameBenchmark {
+
+    @Param({"3", "10", "50"})
+    public int players;
+
+    private Game lobby;
+    private Game running;
+    private Method distributePoints;
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        lobby = Fixtures.lobby(players);
+        running = Fixtures.votingGame(players);
+        distributePoints = Game.class.getDeclaredMethod("distributePoints");
+        distributePoints.setAccessible(true);
+    }
+
+    @Benchmark
+    public GameUpdateResponse updateLobby() {
+        // nobody is ready, so the lobby stays open
+        return lobby.update();
+    }
+
+    @Benchmark
+    public GameUpdateResponse updateRunning() {
+        // deadline not reached, nothing to do
+        return running.update();
+    }
+
+    @Benchmark
+    public List<Long> getEnrolledPlayers() {
+        return running.getEnrolledPlayers();
+    }
+
+    @Benchmark
+    public List<Long> getPresentPlayers() {
+        return running.getPresentPlayers();
+    }
+
+    @Benchmark
+    public Object distributePoints() throws ReflectiveOperationException {
+        // scores keep accumulating, which doesn't change the work done
+        return distributePoints.invoke(running);
+    }
+}
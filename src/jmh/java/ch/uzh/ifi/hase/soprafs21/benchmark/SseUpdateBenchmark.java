@@ -0,0 +1,99 @@
+package ch.uzh.ifi.hase.soprafs21.benchmark;
+
+import ch.uzh.ifi.hase.soprafs21.Application;
+import ch.uzh.ifi.hase.soprafs21.entity.Game;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityDTOCache;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.SseUpdateDTO;
+import ch.uzh.ifi.hase.soprafs21.service.GameService;
+import ch.uzh.ifi.hase.soprafs21.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * building the update of a single subscriber, as done for every push.
+ * runs against the application with an in-memory database holding a number of lobbies.
+ * the subscriber observes all lobbies, so the graph grows with the number of games.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SseUpdateBenchmark {
+
+    private static final int PLAYERS_PER_GAME = 5;
+
+    @Param({"10", "100"})
+    public int games;
+
+    @Param({"true", "false"})
+    public boolean coldCache;
+
+    private ConfigurableApplicationContext context;
+    private TransactionTemplate transactionTemplate;
+    private EntityDTOCache entityDTOCache;
+    private Long userId;
+    private Set<Long> observed;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Set<Long> gameIds = new HashSet<>();
+        context = SpringApplication.run(Application.class,
+                "--spring.main.web-application-type=none",
+                "--spring.datasource.url=jdbc:h2:mem:benchmark",
+                "--meme.source=file",
+                "--meme.source.file=classpath:benchmark-memes.txt",
+                "--logging.level.root=WARN");
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        entityDTOCache = context.getBean(EntityDTOCache.class);
+        UserService userService = context.getBean(UserService.class);
+        GameService gameService = context.getBean(GameService.class);
+
+        for (int g = 0; g < games; g++) {
+            int first = g * PLAYERS_PER_GAME;
+            // one transaction per game, so the users stay managed while joining
+            Long gameMasterId = transactionTemplate.execute(status -> {
+                User gameMaster = userService.createUser(Fixtures.newUser("player" + first));
+                Game game = gameService.createGame(gameMaster, Fixtures.settings(3, PLAYERS_PER_GAME));
+                gameIds.add(game.getGameId());
+                for (int p = 1; p < PLAYERS_PER_GAME; p++) {
+                    User player = userService.createUser(Fixtures.newUser("player" + (first + p)));
+                    gameService.joinGame(game.getGameId(), player, "");
+                }
+                return gameMaster.getUserId();
+            });
+            if (userId == null) userId = gameMasterId;
+        }
+        observed = transactionTemplate.execute(status ->
+                new HashSet<>(userService.getUserByUserId(userId).getObservedEntities()));
+        observed.addAll(gameIds);
+    }
+
+    @Setup(Level.Invocation)
+    public void invalidate() {
+        if (coldCache) entityDTOCache.invalidateAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean initAndFilter() {
+        return transactionTemplate.execute(status -> {
+            SseUpdateDTO update = new SseUpdateDTO();
+            update.setUserId(userId);
+            update.setObservedEntities(new HashSet<>(observed));
+            update.init();
+            return update.filter(new HashMap<>());
+        });
+    }
+}
@@ -0,0 +1,55 @@
+package ch.uzh.ifi.hase.soprafs21.constant;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * roles of the participants of a message channel, mentioned by their tag, e.g. @all.
+ * a participant's roles are stored as bitmask, each role being one bit.
+ */
+public enum ChatRole {
+    ALL("@all"),        // reads and posts, mentions every participant
+    ADMIN("@admin"),    // created the channel
+    BOT("@bot");        // chat bot, unused feature
+
+    private static final Map<String, ChatRole> byTag = new HashMap<>();
+    static {
+        for (ChatRole role : values()) byTag.put(role.tag, role);
+    }
+
+    private final String tag;
+
+    ChatRole(String tag) {
+        this.tag = tag;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public boolean isIn(int mask) {
+        return (mask & bit()) != 0;
+    }
+
+    /**
+     * @param tag
+     * @return the role with the tag, null if there is none
+     */
+    public static ChatRole of(String tag) {
+        return byTag.get(tag);
+    }
+
+    /**
+     * @param mask
+     * @return the tags of the roles in the mask, concatenated
+     */
+    public static String tagsOf(int mask) {
+        StringBuilder tags = new StringBuilder();
+        for (ChatRole role : values()) if (role.isIn(mask)) tags.append(role.tag);
+        return tags.toString();
+    }
+}
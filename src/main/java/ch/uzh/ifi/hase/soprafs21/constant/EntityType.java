@@ -4,52 +4,86 @@ import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
 import ch.uzh.ifi.hase.soprafs21.repository.*;
 import org.springframework.data.jpa.repository.JpaRepository;
 
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
  * list of entities that can be observed by a client
+ *
+ * every entity id carries its type in the lowest TYPE_BITS bits (the ordinal of its type),
+ * followed by INDEX_BITS bits of sub-index (e.g. the round index of a game round)
+ * and the serial number in the remaining bits:
+ *
+ *     [ serial | index (6 bits) | type (4 bits) ]
+ *
+ * entities belonging together (a game, its rounds and summaries) share the same serial,
+ * so the type of any id can be resolved without touching the database.
+ * DON'T reorder the constants, the ordinal is part of every stored id.
  */
 public enum EntityType {
     USER, GAME, GAME_SUMMARY, GAME_ROUND_SUMMARY, GAME_SETTINGS, GAME_ROUND, MESSAGE_CHANNEL, MESSAGE, UNKNOWN;
 
+    public static final int TYPE_BITS = 4;
+    public static final int INDEX_BITS = 6;
 
-    private static final Map<Long, EntityType> knownTypes = new HashMap<>();
-    private static final Map<JpaRepository, EntityType> repoTypes = new HashMap<>();
-    private static final Map<EntityType, JpaRepository> typeRepos = new HashMap<>();
+    private static final long TYPE_MASK = (1L << TYPE_BITS) -1;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) -1;
+    private static final EntityType[] types = values();
 
+    private static volatile Map<EntityType, JpaRepository> typeRepos;
 
+    /**
+     * composes an id of this type
+     * @param serial serial number shared by associated entities
+     * @param index sub-index, 0 if not applicable
+     * @return the id
+     */
+    public Long id(long serial, int index) {
+        if (this == UNKNOWN) throw new IllegalArgumentException("cannot compose an id of unknown type");
+        if (index < 0 || index > INDEX_MASK) throw new IllegalArgumentException("index out of range: " + index);
+        return (serial << (TYPE_BITS + INDEX_BITS)) | ((long) index << TYPE_BITS) | ordinal();
+    }
 
+    /**
+     * resolves the type of an id without accessing any repository
+     * @param id
+     * @return the type encoded in the id, UNKNOWN if there is none
+     */
     public static EntityType get(Long id) {
-        if (repoTypes.isEmpty()) {
-            repoTypes.put(SpringContext.getBean(UserRepository.class), USER);
-            repoTypes.put(SpringContext.getBean(GameRepository.class), GAME);
-            repoTypes.put(SpringContext.getBean(GameSummaryRepository.class), GAME_SUMMARY);
-            repoTypes.put(SpringContext.getBean(GameRoundSummaryRepository.class), GAME_ROUND_SUMMARY);
-            repoTypes.put(SpringContext.getBean(GameSettingsRepository.class), GAME_SETTINGS);
-            repoTypes.put(SpringContext.getBean(GameRoundRepository.class), GAME_ROUND);
-            repoTypes.put(SpringContext.getBean(MessageChannelRepository.class), MESSAGE_CHANNEL);
-            repoTypes.put(SpringContext.getBean(MessageRepository.class), MESSAGE);
-            for (JpaRepository repo : repoTypes.keySet()) typeRepos.put(repoTypes.get(repo), repo);
-        }
-        EntityType type = knownTypes.get(id);
-        if (type != null) return type;
-        for (JpaRepository repo : repoTypes.keySet()) {
-            if (repo.existsById(id)) {
-                type = repoTypes.get(repo);
-                knownTypes.put(id, type);
-                return type;
-            }
-        }
-        return UNKNOWN;
+        if (id == null || id < 0) return UNKNOWN;
+        int ordinal = (int) (id & TYPE_MASK);
+        return ordinal < UNKNOWN.ordinal()? types[ordinal] : UNKNOWN;
+    }
+
+    public static long serialOf(Long id) {
+        return id >>> (TYPE_BITS + INDEX_BITS);
+    }
+
+    public static int indexOf(Long id) {
+        return (int) ((id >>> TYPE_BITS) & INDEX_MASK);
     }
 
-//    public static JpaRepository getRepo(EntityType type) {
-//        return typeRepos.get(type);
-//    }
+    public static JpaRepository getRepo(EntityType type) {
+        if (typeRepos == null) initRepos();
+        return typeRepos.get(type);
+    }
 
     public static JpaRepository getRepo(Long id) {
-        return typeRepos.get(get(id));
+        return getRepo(get(id));
+    }
+
+    private static synchronized void initRepos() {
+        if (typeRepos != null) return;
+        Map<EntityType, JpaRepository> repos = new EnumMap<>(EntityType.class);
+        repos.put(USER, SpringContext.getBean(UserRepository.class));
+        repos.put(GAME, SpringContext.getBean(GameRepository.class));
+        repos.put(GAME_SUMMARY, SpringContext.getBean(GameSummaryRepository.class));
+        repos.put(GAME_ROUND_SUMMARY, SpringContext.getBean(GameRoundSummaryRepository.class));
+        repos.put(GAME_SETTINGS, SpringContext.getBean(GameSettingsRepository.class));
+        repos.put(GAME_ROUND, SpringContext.getBean(GameRoundRepository.class));
+        repos.put(MESSAGE_CHANNEL, SpringContext.getBean(MessageChannelRepository.class));
+        repos.put(MESSAGE, SpringContext.getBean(MessageRepository.class));
+        typeRepos = repos;
     }
 
 }
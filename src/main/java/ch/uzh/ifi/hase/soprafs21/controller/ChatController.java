@@ -47,7 +47,8 @@ public class ChatController {
     }
 
     /**
-     * get messages from a chat, can use queries
+     * get messages from a chat, a page at a time
+     * @see ChatService#getMessages
      */
     @GetMapping("/chat/{chatId}")
     @ResponseStatus(HttpStatus.OK)
@@ -55,35 +56,16 @@ public class ChatController {
     public List<MessageDTO> getMessages(
             @PathVariable("chatId") Long chatId,
             @RequestHeader("userId") Long userId,
-            @RequestHeader("token") String token
-            /*@RequestParam Optional<String> sender,
-            @RequestParam Optional<String> content,
-            @RequestParam Optional<Long> since,
-            @RequestParam Optional<Long> before,
-            @RequestParam Optional<Integer> first,
-            @RequestParam Optional<Integer> latest*/
+            @RequestHeader("token") String token,
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "before", required = false) Long before,
+            @RequestParam(value = "limit", defaultValue = "" + ChatService.DEFAULT_PAGE_SIZE) int limit
     ) {
         // authenticate
         userService.verifyUser(userId, token);
         MessageChannel messageChannel = chatService.verifyReader(chatId, userId);
-        // fetch all messages in the internal representation
-        List<Message> messages = messageChannel.getMessages();
-        // filter
-        /*if (sender.isPresent())
-            messages.removeIf(m -> !m.getSender().getUsername().equals(sender.get()));
-        if (content.isPresent())
-            messages.removeIf(m -> !m.getText().contains(content.get()));
-        if (since.isPresent())
-            messages.removeIf(m -> m.getTimestamp() < since.get());
-        if (before.isPresent())
-            messages.removeIf(m -> m.getTimestamp() > before.get());
-        if (first.isPresent() && latest.isPresent())
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("bad query"));
-        if (first.isPresent())
-            messages = messages.subList(0, Math.min(first.get(), messages.size()));
-        if (latest.isPresent())
-            messages = messages.subList(Math.max(messages.size() - latest.get(), 0), messages.size());*/
-
+        // fetch the requested page in the internal representation
+        List<Message> messages = chatService.getMessages(messageChannel, since, before, limit);
         return convertMessageListToDTOList(messages);
     }
 
@@ -6,9 +6,11 @@ import ch.uzh.ifi.hase.soprafs21.entity.GameSettings;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.*;
 import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
 import ch.uzh.ifi.hase.soprafs21.service.GameService;
+import ch.uzh.ifi.hase.soprafs21.service.LobbyDirectory;
 import ch.uzh.ifi.hase.soprafs21.service.UserService;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -25,10 +27,40 @@ public class GameController {
 
     private final GameService gameService;
     private final UserService userService;
+    private final LobbyDirectory lobbyDirectory;
 
-    GameController(GameService gameService, UserService userService) {
+    private static final int MAX_PAGE_SIZE = 100;
+
+    GameController(GameService gameService, UserService userService, LobbyDirectory lobbyDirectory) {
         this.gameService = gameService;
         this.userService = userService;
+        this.lobbyDirectory = lobbyDirectory;
+    }
+
+    /**
+     * list the open lobbies, oldest first
+     * @param name part of the lobby name
+     * @param subreddit
+     * @param freeSlots minimal number of free slots
+     * @param page zero-based page
+     * @param size lobbies per page, at most 100
+     */
+    @GetMapping("/lobbies")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<LobbyDTO> getLobbies(
+            @RequestHeader("userId") Long userId,
+            @RequestHeader("token") String token,
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "subreddit", required = false) String subreddit,
+            @RequestParam(value = "freeSlots", defaultValue = "0") int freeSlots,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "20") int size
+    ) {
+        userService.verifyUser(userId, token);
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid page");
+        return lobbyDirectory.find(name, subreddit, freeSlots, page, size);
     }
 
     /**
@@ -10,16 +10,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import javax.annotation.PostConstruct;
-import java.io.IOException;
-import java.net.ConnectException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
 
 @RestController
 public class SSEController {
@@ -27,47 +18,41 @@ public class SSEController {
     private static final Logger LOGGER = LoggerFactory.getLogger(SSEController.class);
 
     private static final long SUBSCRIBER_LIFETIME = Long.MAX_VALUE;
-    private static final long CONNECTION_TEST_INTERVAL = 3000;
+    private static final int MAX_BATCH_SIZE = 100;
 
     private final UserService userService;
-    private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
 
     private final Map<Long, SseEmitter> unactivatedEmitters = new HashMap<>();
     private final Map<Long, String> emitterTokens = new HashMap<>();
 
+
     SSEController(UserService userService) {
         this.userService = userService;
     }
 
-    //Termination of executor service
-    @PostConstruct
-    public void init() {
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            scheduledExecutorService.shutdownNow();
-        }));
-    }
-
     @GetMapping("/createEmitter/{userId}")
     @CrossOrigin
     public SseEmitter subscribeUpdate(
-            @PathVariable("userId") Long userId
+            @PathVariable("userId") Long userId,
+            @RequestParam(value = "delta", defaultValue = "false") boolean delta,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId
     ) {
 
         SseEmitter sseEmitter = new SseEmitter(SUBSCRIBER_LIFETIME);
 
         sseEmitter.onCompletion(() -> {
             LOGGER.info(String.format("SseEmitter #%d completed", userId));
-            userService.removeSubscriber(userId);
+            userService.removeSubscriber(userId, sseEmitter);
         });
 
         sseEmitter.onTimeout(() -> {
             LOGGER.info(String.format("SseEmitter #%d timed out", userId));
-            userService.removeSubscriber(userId);
+            userService.removeSubscriber(userId, sseEmitter);
         });
 
         sseEmitter.onError((ex) -> {
             LOGGER.info(String.format("ERROR at SseEmitter #%d: %s", userId, ex.toString()));
-            userService.removeSubscriber(userId);
+            userService.removeSubscriber(userId, sseEmitter);
         });
 
 //        String emitterToken = UUID.randomUUID().toString();;
@@ -90,14 +75,10 @@ public class SSEController {
 //            }
 //        });
 
-        userService.putSubscriber(userId, sseEmitter);
-        scheduledExecutorService.scheduleAtFixedRate(() -> {
-            try {
-                sseEmitter.send(SseEmitter.event().name("ConnectionTest").data(null));
-            } catch (IOException e) {
-                sseEmitter.completeWithError(new ConnectException());
-            }
-        }, 10, 5, TimeUnit.SECONDS);
+        // delta clients receive entities they already hold as patches.
+        // reconnecting clients resume their stream after the last event they received.
+        // the connection is kept alive by the SseHeartbeat until the emitter completes
+        userService.putSubscriber(userId, sseEmitter, delta, lastEventId);
 
         LOGGER.info(String.format("SseEmitter #%d initializing...", userId));
         return sseEmitter;
@@ -166,4 +147,25 @@ public class SSEController {
         return dto;
     }
 
+    /**
+     * get several entities at once, e.g. all stubs referenced by an update
+     * @param ids at most 100 entity ids
+     * @return id -> cropped DTO, for the entities that exist
+     */
+    @GetMapping(value = "/entities")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<Long, EntityDTO> getEntities(
+            @RequestHeader("userId") Long userId,
+            @RequestHeader("token") String token,
+            @RequestParam("ids") List<Long> ids
+    ) {
+        userService.verifyUser(userId, token);
+        if (ids.isEmpty() || ids.size() > MAX_BATCH_SIZE)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "between 1 and " + MAX_BATCH_SIZE + " ids expected");
+        Map<Long, EntityDTO> found = EntityDTO.findAll(new LinkedHashSet<>(ids));
+        for (EntityDTO dto : found.values()) dto.crop(userId, null);
+        return found;
+    }
+
 }
@@ -3,7 +3,8 @@ package ch.uzh.ifi.hase.soprafs21.entity;
 import ch.uzh.ifi.hase.soprafs21.constant.*;
 import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
 import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
-import util.MemeUrlSupplier;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeListener;
+import ch.uzh.ifi.hase.soprafs21.helpers.VersionClock;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -34,12 +35,18 @@ import java.util.*;
  */
 @Entity
 @Table(name = "GAME")
+@EntityListeners(EntityChangeListener.class)
 public class Game implements Serializable {
 
     // TODO sort attributes, getters and setters
 
     /* FIELDS */
 
+    private static final long MEMES_RETRY_MILLIS = 5000L;
+
+    // chat commands only the game master may use, see runCommand
+    public static final Set<String> GAME_MASTER_COMMANDS = Set.of("/start", "/a", "/skip", "/kill", "/pause", "/resume", "/ban", "/forgive");
+
     @Id
     private Long gameId; // get only
 
@@ -73,6 +80,9 @@ public class Game implements Serializable {
     @Column
     private Long remainingCountdown; // internal use only
 
+    @Column(nullable = false)
+    private Boolean startPending = false; // forced start waiting for the memes, see closeLobby
+
     @OneToOne(targetEntity = GameSummary.class)
     private GameSummary gameSummary;
 
@@ -91,20 +101,20 @@ public class Game implements Serializable {
     public Game setGameId(Long gameId) {
         if (this.gameId != null) throw new IllegalStateException();
         this.gameId = gameId;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
         return this;
     }
 
     public Long getGameSummaryId() {
-        return gameId +1;
+        return EntityType.GAME_SUMMARY.id(EntityType.serialOf(gameId), 0);
     }
 
     public Long getGameRoundId(int roundIndex) {
-        return gameId + 2L*roundIndex +4;
+        return EntityType.GAME_ROUND.id(EntityType.serialOf(gameId), roundIndex);
     }
 
     public Long getGameRoundSummaryId(int roundIndex) {
-        return gameId + 2L*roundIndex +5;
+        return EntityType.GAME_ROUND_SUMMARY.id(EntityType.serialOf(gameId), roundIndex);
     }
 
     public Map<Long, Integer> getScores() {
@@ -131,6 +141,10 @@ public class Game implements Serializable {
         return advanceTargetTime - System.currentTimeMillis();
     }
 
+    public Boolean getStartPending() {
+        return startPending;
+    }
+
     public Long getAdvanceTargetTime() {
         return advanceTargetTime;
     }
@@ -221,7 +235,8 @@ public class Game implements Serializable {
     }
 
     public List<String> getMemesFound() {
-        return gameSettings.getMemesFound();
+        // the game is the one to update once they arrive
+        return gameSettings.findMemes(gameId);
     }
 
     // TODO sort getters and setters
@@ -300,7 +315,7 @@ public class Game implements Serializable {
      */
     public synchronized PlayerState setPlayerReady(Long player, boolean ready) {
         playerStates.put(player, getPlayerState(player).readyState(ready));
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
         return getPlayerState(player);
     }
 
@@ -315,7 +330,7 @@ public class Game implements Serializable {
         if (currentGameMaster != null)
             playerStates.put(currentGameMaster, getPlayerState(currentGameMaster).promotedState(false));
         playerStates.put(player, getPlayerState(player).promotedState(true));
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
         // TODO undo if didn't work
         return getPlayerState(player);
     }
@@ -400,7 +415,7 @@ public class Game implements Serializable {
         PlayerState currentPlayerState = getPlayerState(player);
         if (!currentPlayerState.isBanned()) return currentPlayerState;
         playerStates.put(player, PlayerState.VANISHED);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
         return PlayerState.VANISHED;
     }
 
@@ -413,8 +428,8 @@ public class Game implements Serializable {
     private synchronized void addPlayer(User player, PlayerState playerState) {
         assert(playerState.isEnrolled());
         playerStates.put(player.getUserId(), playerState);
-        this.gameChat.addRole(player.getUserId(), "@all");
-        this.lastModified = System.currentTimeMillis();
+        this.gameChat.addRole(player.getUserId(), ChatRole.ALL);
+        this.lastModified = VersionClock.next();
         player.setCurrentGameId(this.getGameId());
         checkPlayerList(); // TODO
     }
@@ -428,10 +443,10 @@ public class Game implements Serializable {
     private synchronized PlayerState removePlayer(User player, PlayerState playerState) {
         assert(!playerState.isPresent());
         playerStates.put(player.getUserId(), playerState);
-        gameChat.removeRole(player.getUserId(), "@all");
+        gameChat.removeRole(player.getUserId(), ChatRole.ALL);
         player.setCurrentGameId(null);
         checkPlayerList();
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
         return playerState;
     }
 
@@ -501,7 +516,7 @@ public class Game implements Serializable {
         gameMaster.setCurrentGameId(this.gameId);
         // set next game state
         gameState = GameState.LOBBY;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
         return this;
     }
 
@@ -512,6 +527,8 @@ public class Game implements Serializable {
      * 2) less than 3 players are present
      * 3) not forced and not all players are ready
      * 4) not enough memes have been found
+     * a forced close lacking memes is remembered (see getStartPending),
+     * update() closes the lobby once they arrived.
      * @param force set true if the lobby should be closed regardless of whether players are ready or not.
      * @return whether the lobby was closed successfully
      */
@@ -519,16 +536,23 @@ public class Game implements Serializable {
         if (gameState != GameState.LOBBY) return false;
         if (!force && getPresentPlayers().size() < 3) return false;
         if (!force && (getReadyPlayers().size() < getPresentPlayers().size())) return false;
-        if (getMemesFound().size() < getTotalRounds()) return false;
+        List<String> memes = getMemesFound();
+        if (memes.size() < getTotalRounds()) {
+            if (force && !startPending) {
+                startPending = true;
+                this.lastModified = VersionClock.next();
+            }
+            return false;
+        }
 
+        startPending = false;
         gameState = GameState.STARTING;
 
-        MemeUrlSupplier memeFactory = MemeUrlSupplier.create(getSubreddit(), getMemeType().toString().toLowerCase());
         for (int i = 0; i < gameSettings.getTotalRounds(); i++) {
             GameRound round = new GameRound();
             round.setGameRoundId(this.getGameRoundId(i));
             round.setTitle(String.format("Round %d",(i+1)));
-            round.setMemeURL(memeFactory.get());
+            round.setMemeURL(memes.get(i));
             Map<Long, Integer> roundScores = round.getScores();
             for (Long playerId : getEnrolledPlayers()) roundScores.put(playerId, 0);
             this.gameRounds.add(round);
@@ -539,7 +563,7 @@ public class Game implements Serializable {
         }
         // 3 seconds until game starts
         setCountdown(3000L);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
         return true;
     }
 
@@ -575,7 +599,7 @@ public class Game implements Serializable {
         // time measure will be lost while paused
         remainingCountdown = getCurrentCountdown();
         this.gameState = GameState.PAUSED;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     /**
@@ -590,6 +614,7 @@ public class Game implements Serializable {
         gameState = GameState.RUNNING;
         // start measuring time again
         setCountdown(remainingCountdown);
+        this.lastModified = VersionClock.next();
     }
 
     /**
@@ -600,26 +625,29 @@ public class Game implements Serializable {
         for (Long player : getPresentPlayers()) playerStates.put(player, PlayerState.LEFT);
 //        gameChat.removeRole(chatBot.getUserId(), "@bot"); // unused feature
 //        gameChat.close(); // unused feature
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     /**
      * if the game is dead, returns a summary of it
-     * if the game is running, updates the countdown and advances if the latter ran out.
+     * if the game is running and its countdown ran out, advances it.
+     * a lobby is closed if all players are ready.
+     * @return MODIFIED if the game transitioned, OK if nothing was due
      */
     public synchronized GameUpdateResponse update() {
         // advance depending on game state
         switch(gameState) {
-            // TODO distinguish whether modified or not
-            case LOBBY:     closeLobby(false);
-                            return GameUpdateResponse.MODIFIED;
+            case LOBBY:     return closeLobby(startPending)?
+                                    GameUpdateResponse.MODIFIED : GameUpdateResponse.OK;
 
-            case STARTING:  // update countdown. If it ran out, start.
-                            if (getCurrentCountdown() < 0) start();
+            case STARTING:  // if the countdown ran out, start.
+                            if (getCurrentCountdown() >= 0) return GameUpdateResponse.OK;
+                            start();
                             return GameUpdateResponse.MODIFIED;
 
-            case RUNNING:   // update countdown. If it ran out, advance.
-                            if (getCurrentCountdown() < 0) advance();
+            case RUNNING:   // if the countdown ran out, advance.
+                            if (getCurrentCountdown() >= 0) return GameUpdateResponse.OK;
+                            advance();
                             return GameUpdateResponse.MODIFIED;
 
             case AFTERMATH: return GameUpdateResponse.COMPLETE;
@@ -628,7 +656,22 @@ public class Game implements Serializable {
             case ABANDONED:
             case FINISHED:  return GameUpdateResponse.DEAD;
 
-            default:        return GameUpdateResponse.MODIFIED;
+            default:        return GameUpdateResponse.OK;
+        }
+    }
+
+    /**
+     * time at which the game needs to be updated next.
+     * lobbies and paused games don't have a deadline, they only need an update when they change.
+     * lobbies waiting for memes to start are checked again, in case fetching them failed.
+     * @return epoch millis, null if there is no deadline
+     */
+    public synchronized Long getNextDeadline() {
+        switch(gameState) {
+            case LOBBY:     return startPending? System.currentTimeMillis() + MEMES_RETRY_MILLIS : null;
+            case STARTING:
+            case RUNNING:   return advanceTargetTime;
+            default:        return null;
         }
     }
 
@@ -660,7 +703,7 @@ public class Game implements Serializable {
                                 }
             case CLOSED ->      skipRound();
         }
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     /**
@@ -723,7 +766,7 @@ public class Game implements Serializable {
             // update total scores
             scores.put(player, scores.get(player) + roundScores.get(player));
         }
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     /**
@@ -748,7 +791,7 @@ public class Game implements Serializable {
             // this will cause the game to advance on next update
             advanceTargetTime = 0L;
         }
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     /**
@@ -790,6 +833,15 @@ public class Game implements Serializable {
             User user = repo.findByUserId(userId);
             if (user != null) referenced.add(user);
         }
+        runCommand(command, referenced);
+    }
+
+    /**
+     * runs a chat command of a player
+     * @param command message containing the command
+     * @param referenced users referenced by the command, already looked up
+     */
+    public void runCommand(Message command, Collection<User> referenced) {
 //        referenced.remove(chatBot);
 
         PlayerState commanderState = getPlayerState(command.getSenderId());
@@ -1,6 +1,8 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
 import ch.uzh.ifi.hase.soprafs21.constant.RoundPhase;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeListener;
+import ch.uzh.ifi.hase.soprafs21.helpers.VersionClock;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -16,6 +18,7 @@ import java.util.Map;
 
 @Entity
 @Table(name="GAME_ROUND")
+@EntityListeners(EntityChangeListener.class)
 public class GameRound implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -59,7 +62,7 @@ public class GameRound implements Serializable {
 
     public void setTitle(String title) {
         this.title = title;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public String getMemeURL() {
@@ -68,7 +71,7 @@ public class GameRound implements Serializable {
 
     public void setMemeURL(String memeURL) {
         this.memeURL = memeURL;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public RoundPhase getRoundPhase() {
@@ -77,12 +80,12 @@ public class GameRound implements Serializable {
 
     public void nextPhase() {
         this.roundPhase = roundPhase.nextPhase();
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public void close() {
         this.roundPhase = RoundPhase.CLOSED;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public void putSuggestion(Long user, String suggestion) {
@@ -91,7 +94,7 @@ public class GameRound implements Serializable {
         if (user == null)
             throw new NullPointerException("\"null\" can't suggest");
         this.suggestions.put(user, suggestion);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public Map<Long, String> getSuggestions() {
@@ -105,7 +108,7 @@ public class GameRound implements Serializable {
             throw new NullPointerException("\"null\" can't vote");
         if (user.equals(targetUserId))
             throw new IllegalArgumentException("can't vote for yourself");
-        lastModified = System.currentTimeMillis();
+        lastModified = VersionClock.next();
         this.votes.put(user, targetUserId);
     }
 
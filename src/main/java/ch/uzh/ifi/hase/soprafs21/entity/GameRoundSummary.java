@@ -1,6 +1,8 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
+import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
 import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
+import ch.uzh.ifi.hase.soprafs21.helpers.VersionClock;
 import ch.uzh.ifi.hase.soprafs21.repository.GameRoundSummaryRepository;
 
 import javax.persistence.*;
@@ -72,13 +74,14 @@ public class GameRoundSummary implements Serializable {
     public void adapt(GameRound gameRound) {
         if (this.title != null) throw new IllegalStateException("GameRoundSummaries are immutable!");
 
-        this.gameRoundSummaryId = gameRound.getGameRoundId()+1;
+        Long gameRoundId = gameRound.getGameRoundId();
+        this.gameRoundSummaryId = EntityType.GAME_ROUND_SUMMARY.id(EntityType.serialOf(gameRoundId), EntityType.indexOf(gameRoundId));
         this.title = gameRound.getTitle();
         this.memeURL = gameRound.getMemeURL();
         this.suggestions = new HashMap(gameRound.getSuggestions());
         this.votes = new HashMap<>(gameRound.getVotes());
         this.scores = new HashMap(gameRound.getScores());
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
 
         GameRoundSummaryRepository repo = SpringContext.getBean(GameRoundSummaryRepository.class);
         repo.save(this);
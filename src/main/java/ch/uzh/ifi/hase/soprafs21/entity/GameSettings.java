@@ -1,8 +1,14 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
 import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
-import util.MemeUrlSupplier;
-
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeListener;
+import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
+import ch.uzh.ifi.hase.soprafs21.helpers.TaggedIdGenerator;
+import ch.uzh.ifi.hase.soprafs21.helpers.VersionClock;
+import ch.uzh.ifi.hase.soprafs21.service.MemeCatalogue;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -15,6 +21,7 @@ import java.util.List;
  */
 @Entity
 @Table(name = "GAME_SETTINGS")
+@EntityListeners(EntityChangeListener.class)
 public class GameSettings implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -22,7 +29,11 @@ public class GameSettings implements Serializable {
     /* FIELDS */
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "gameSettingsIdGenerator")
+    @GenericGenerator(
+            name = "gameSettingsIdGenerator",
+            strategy = "ch.uzh.ifi.hase.soprafs21.helpers.TaggedIdGenerator",
+            parameters = @Parameter(name = TaggedIdGenerator.TYPE_PARAMETER, value = "GAME_SETTINGS"))
     private Long gameSettingsId;
 
     @Column(nullable = false)
@@ -66,7 +77,7 @@ public class GameSettings implements Serializable {
 
     public void setGameSettingsId(Long gameSettingsId) {
         this.gameSettingsId = gameSettingsId;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public String getName() {
@@ -75,7 +86,7 @@ public class GameSettings implements Serializable {
 
     public void setName(String name) {
         this.name = name;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public String getPassword() {
@@ -84,7 +95,7 @@ public class GameSettings implements Serializable {
 
     public void setPassword(String password) {
         this.password = (password == null? "NO_PASSWORD" : password);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public Integer getMaxPlayers() {
@@ -93,7 +104,7 @@ public class GameSettings implements Serializable {
 
     public void setMaxPlayers(int maxPlayers) {
         this.maxPlayers = maxPlayers;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public String getSubreddit() {
@@ -103,7 +114,8 @@ public class GameSettings implements Serializable {
     public void setSubreddit(String subreddit) {
         this.subreddit = subreddit;
         this.memesFound.clear();
-        this.lastModified = System.currentTimeMillis();
+        prefetchMemes();
+        this.lastModified = VersionClock.next();
     }
 
     public MemeType getMemeType() {
@@ -113,7 +125,8 @@ public class GameSettings implements Serializable {
     public void setMemeType(MemeType memeType) {
         this.memeType = memeType;
         this.memesFound.clear();
-        this.lastModified = System.currentTimeMillis();
+        prefetchMemes();
+        this.lastModified = VersionClock.next();
     }
 
     public Integer getTotalRounds() {
@@ -124,7 +137,7 @@ public class GameSettings implements Serializable {
         totalRounds = Math.max(totalRounds, 1);
         totalRounds = Math.min(totalRounds, 20);
         this.totalRounds = totalRounds;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public Integer getMaxSuggestSeconds() {
@@ -133,7 +146,7 @@ public class GameSettings implements Serializable {
 
     public void setMaxSuggestSeconds(Integer maxNamingTime) {
         this.maxSuggestSeconds = maxNamingTime;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public Integer getMaxVoteSeconds() {
@@ -142,7 +155,7 @@ public class GameSettings implements Serializable {
 
     public void setMaxVoteSeconds(Integer maxVotingTime) {
         this.maxVoteSeconds = maxVotingTime;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public Integer getMaxAftermathSeconds() {
@@ -151,17 +164,35 @@ public class GameSettings implements Serializable {
 
     public void setMaxAftermathSeconds(Integer maxResultsTime) {
         this.maxAftermathSeconds = maxResultsTime;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public List<String> getMemesFound() {
+        return findMemes(gameSettingsId);
+    }
+
+    /**
+     * takes over the memes from the MemeCatalogue if they arrived already, never waits for them.
+     * @param notifyId id of the entity to mark as changed once they arrive, if they didn't yet
+     * @return the memes found so far, possibly empty
+     */
+    public List<String> findMemes(Long notifyId) {
         if (memesFound.isEmpty() && subreddit != null && memeType != null) {
-            memesFound.addAll(MemeUrlSupplier.create(getSubreddit(), getMemeType().toString().toLowerCase()).getMemeList());
-            this.lastModified = System.currentTimeMillis();
+            MemeCatalogue memeCatalogue = SpringContext.getBean(MemeCatalogue.class);
+            List<String> memes = memeCatalogue == null? null : memeCatalogue.peek(subreddit, memeType, notifyId);
+            if (memes != null && !memes.isEmpty()) {
+                memesFound.addAll(memes);
+                this.lastModified = VersionClock.next();
+            }
         }
         return memesFound;
     }
 
+    private void prefetchMemes() {
+        MemeCatalogue memeCatalogue = SpringContext.getBean(MemeCatalogue.class);
+        if (memeCatalogue != null) memeCatalogue.prefetch(subreddit, memeType);
+    }
+
     public Long getLastModified() {
         return lastModified;
     }
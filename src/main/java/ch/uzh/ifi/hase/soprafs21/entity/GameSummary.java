@@ -3,6 +3,7 @@ package ch.uzh.ifi.hase.soprafs21.entity;
 import ch.uzh.ifi.hase.soprafs21.constant.GameState;
 import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
 import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
+import ch.uzh.ifi.hase.soprafs21.helpers.VersionClock;
 import ch.uzh.ifi.hase.soprafs21.repository.GameSummaryRepository;
 
 import javax.persistence.*;
@@ -103,7 +104,7 @@ public class GameSummary implements Serializable {
         for (GameRoundSummary round : rounds) roundIds.add(round.getGameRoundSummaryId());
         this.subreddit = game.getSubreddit();
         this.memeType = game.getMemeType();
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
 
         GameSummaryRepository repo = SpringContext.getBean(GameSummaryRepository.class);
         repo.save(this);
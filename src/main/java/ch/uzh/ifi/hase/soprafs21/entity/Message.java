@@ -1,8 +1,12 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
+import ch.uzh.ifi.hase.soprafs21.helpers.MessageTokens;
+import ch.uzh.ifi.hase.soprafs21.helpers.TaggedIdGenerator;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import javax.persistence.*;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -12,15 +16,28 @@ import java.util.List;
  */
 
 @Entity
-@Table(name="MESSAGE")
+@Table(name="MESSAGE",
+        indexes = @Index(name = "MESSAGE_CHANNEL_TIMESTAMP_INDEX", columnList = "messageChannelId, timestamp, messageId"),
+        uniqueConstraints = @UniqueConstraint(name = "MESSAGE_CHANNEL_SEQUENCE", columnNames = {"messageChannelId", "sequenceNumber"}))
 public class Message implements Serializable, Comparable<Message> {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "messageIdGenerator")
+    @GenericGenerator(
+            name = "messageIdGenerator",
+            strategy = "ch.uzh.ifi.hase.soprafs21.helpers.TaggedIdGenerator",
+            parameters = @Parameter(name = TaggedIdGenerator.TYPE_PARAMETER, value = "MESSAGE"))
     private Long messageId;
 
+    @Column
+    private Long messageChannelId;
+
+    // position in the chat log of the channel, starting at 1
+    @Column
+    private Long sequenceNumber;
+
     @Column
     private Long senderId;
 
@@ -30,11 +47,31 @@ public class Message implements Serializable, Comparable<Message> {
     @Column(nullable = false)
     private String text;
 
+    // parsed on first use
+    @Transient
+    private transient MessageTokens tokens;
+
 
     public Long getMessageId() {
         return messageId;
     }
 
+    public Long getMessageChannelId() {
+        return messageChannelId;
+    }
+
+    public void setMessageChannelId(Long messageChannelId) {
+        this.messageChannelId = messageChannelId;
+    }
+
+    public Long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public void setSequenceNumber(Long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
     public Long getSenderId() {
         return senderId;
     }
@@ -57,6 +94,12 @@ public class Message implements Serializable, Comparable<Message> {
 
     public void setText(String text) {
         this.text = text;
+        this.tokens = null;
+    }
+
+    public MessageTokens getTokens() {
+        if (tokens == null) tokens = MessageTokens.parse(text);
+        return tokens;
     }
 
     public void setMessageId(Long messageId) {this.messageId = messageId;}
@@ -71,22 +114,15 @@ public class Message implements Serializable, Comparable<Message> {
     }
 
     public List<String> getReferences() {
-        List<String> references = new ArrayList<>();
-        for (String word : text.split(" ")) if (word.startsWith("@")) references.add(word);
-        return references;
+        return getTokens().getMentions();
     }
 
     public String getCommand() {
-        for (String word : text.split(" ")) if (word.startsWith("/")) return word;
-        return null;
+        return getTokens().getCommand();
     }
 
     public String getArgument(int argNo) {
-        int cmdIdx;
-        String[] words = text.split(" ");
-        for (cmdIdx = 0; cmdIdx < words.length; cmdIdx++) if (words[cmdIdx].startsWith("/")) break;
-        if (cmdIdx == words.length || cmdIdx+argNo >= words.length) return null;
-        return words[cmdIdx + argNo];
+        return getTokens().getArgument(argNo);
     }
 
 }
@@ -1,9 +1,15 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
+import ch.uzh.ifi.hase.soprafs21.constant.ChatRole;
 import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
-import ch.uzh.ifi.hase.soprafs21.repository.GameRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs21.service.GameTickEngine;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeListener;
+import ch.uzh.ifi.hase.soprafs21.helpers.TaggedIdGenerator;
+import ch.uzh.ifi.hase.soprafs21.helpers.VersionClock;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.*;
@@ -16,12 +22,17 @@ import java.util.*;
 
 @Entity
 @Table(name="MESSAGE_CHANNEL")
+@EntityListeners(EntityChangeListener.class)
 public class MessageChannel implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "messageChannelIdGenerator")
+    @GenericGenerator(
+            name = "messageChannelIdGenerator",
+            strategy = "ch.uzh.ifi.hase.soprafs21.helpers.TaggedIdGenerator",
+            parameters = @Parameter(name = TaggedIdGenerator.TYPE_PARAMETER, value = "MESSAGE_CHANNEL"))
     private Long messageChannelId;
 
 //    @Column(nullable = false)
@@ -30,11 +41,13 @@ public class MessageChannel implements Serializable {
 //    @Column(nullable = false)
 //    private Boolean closed = false; // unused feature
 
+    // user id -> bitmask of the participant's roles
     @ElementCollection
-    private final Map<Long, String> roles = new HashMap<>();
+    private final Map<Long, Integer> roles = new HashMap<>();
 
-    @OneToMany(targetEntity = Message.class)
-    private final List<Message> messages = new ArrayList<>();
+    // role -> participants having it, built on first use
+    @Transient
+    private transient Map<ChatRole, Set<Long>> members;
 
     @Column
     private Long associatedGameId;
@@ -55,16 +68,19 @@ public class MessageChannel implements Serializable {
 //        return closed;
 //    } // unused feature
 
-    public List<Message> getMessages() {
-        return messages;
-    }
-
-    public synchronized void addMessage(Message message) {
-        messages.add(message);
-
-        if (associatedGameId != null && message.getCommand()!= null) {
-            Game game = SpringContext.getBean(GameRepository.class).findByGameId(associatedGameId);
-            if (game != null) game.runCommand(message);
+    /**
+     * appends a message to the channel and queues its command for the associated game, if any.
+     * commands in messages without sender, e.g. bot replies, are not run.
+     * the messages aren't held by the channel, they are stored in its chat log,
+     * see ChatService.postMessage and MessageRepository.
+     * @param message
+     */
+    public void addMessage(Message message) {
+        message.setMessageChannelId(messageChannelId);
+
+        if (associatedGameId != null && message.getSenderId() != null && message.getCommand()!= null) {
+            GameTickEngine gameTickEngine = SpringContext.getBean(GameTickEngine.class);
+            if (gameTickEngine != null) gameTickEngine.submitCommand(associatedGameId, message);
         }
 //        Set<Long> referenced = getReferenced(message);
 //        if (message.getCommand()!= null) referenced.addAll(getReferenced("@bot"));
@@ -73,7 +89,7 @@ public class MessageChannel implements Serializable {
 //            User user = repo.findByUserId(userId);
 //            if (user != null) user.addInbox(message);
 //        }
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public Long getAssociatedGameId() {
@@ -82,31 +98,56 @@ public class MessageChannel implements Serializable {
 
     public void setAssociatedGameId(Long associatedGameId) {
         this.associatedGameId = associatedGameId;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
 //    public void setConfidential(Boolean confidential) {
 //        this.confidential = confidential;
-//        this.lastModified = System.currentTimeMillis();
+//        this.lastModified = VersionClock.next();
 //    }
 
     public void setMessageChannelId(Long messageChannelId){
         this.messageChannelId = messageChannelId;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
 //    public void close() {
 //        this.closed = true;
-//        this.lastModified = System.currentTimeMillis();
+//        this.lastModified = VersionClock.next();
 //    }
 
-    public Map<Long, String> getRoles() {
+    /**
+     * @return user id -> bitmask of the participant's roles
+     * @see ChatRole
+     */
+    public Map<Long, Integer> getRoles() {
         return roles;
     }
 
-    public boolean hasRole(Long userId, String role) {
-        String roles = this.roles.get(userId);
-        return roles != null && roles.contains(role);
+    /**
+     * @return user id -> tags of the participant's roles, concatenated
+     */
+    public Map<Long, String> getRoleTags() {
+        Map<Long, String> tags = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : roles.entrySet()) tags.put(entry.getKey(), ChatRole.tagsOf(entry.getValue()));
+        return tags;
+    }
+
+    public boolean hasRole(Long userId, ChatRole role) {
+        Integer mask = roles.get(userId);
+        return mask != null && role.isIn(mask);
+    }
+
+    private Map<ChatRole, Set<Long>> members() {
+        if (members == null) {
+            Map<ChatRole, Set<Long>> built = new EnumMap<>(ChatRole.class);
+            for (ChatRole role : ChatRole.values()) built.put(role, new HashSet<>());
+            for (Map.Entry<Long, Integer> entry : roles.entrySet()) {
+                for (ChatRole role : ChatRole.values()) if (role.isIn(entry.getValue())) built.get(role).add(entry.getKey());
+            }
+            members = built;
+        }
+        return members;
     }
 
     public Set<Long> getReferenced(Message message) {
@@ -115,33 +156,58 @@ public class MessageChannel implements Serializable {
         return referenced;
     }
 
-    public Set<Long> getReferenced(String role) {
+    /**
+     * @param mention a role tag like @all or a user id like @#1024
+     * @return ids of the users mentioned
+     */
+    public Set<Long> getReferenced(String mention) {
         Set<Long> foundUserIds = new HashSet<>();
-        if (role.length() < 2) return foundUserIds;
-        if (role.charAt(1) == '#'){
-            foundUserIds.add(Long.parseLong(role.substring(2)));
+        if (mention.length() < 2) return foundUserIds;
+        if (mention.charAt(1) == '#'){
+            try {
+                foundUserIds.add(Long.parseLong(mention.substring(2)));
+            } catch (NumberFormatException e) {
+                // not a user id, mentions no one
+            }
         } else {
-            for (Long userId : this.roles.keySet()) if (hasRole(userId, role)) foundUserIds.add(userId);
+            ChatRole role = ChatRole.of(mention);
+            if (role != null) foundUserIds.addAll(members().get(role));
         }
         return foundUserIds;
     }
 
-    public void addRole(Long userId, String role) {
-        String roles = this.roles.get(userId);
-        if (roles == null) roles = "";
-        if (roles.contains(role)) return;
-        this.roles.put(userId, roles+role);
+    public void addRole(Long userId, ChatRole role) {
+        int mask = roles.getOrDefault(userId, 0);
+        if (role.isIn(mask)) return;
+        roles.put(userId, mask | role.bit());
+        if (members != null) members.get(role).add(userId);
+        this.lastModified = VersionClock.next();
+    }
+
+    public void removeRole(Long userId, ChatRole role) {
+        Integer mask = roles.get(userId);
+        if (mask == null) return;
+        // the participant stays listed, without the role
+        roles.put(userId, mask & ~role.bit());
+        if (members != null) members.get(role).remove(userId);
+        this.lastModified = VersionClock.next();
     }
 
-    public void removeRole(Long userId, String role) {
-        String roles = this.roles.get(userId);
-        if (roles == null) return;
-        this.roles.put(userId, roles.replaceFirst(role, ""));
+    /**
+     * takes over the roles of another instance of this channel, e.g. a detached copy
+     * @param roles user id -> bitmask
+     */
+    public void adoptRoles(Map<Long, Integer> roles) {
+        if (this.roles.equals(roles)) return;
+        this.roles.clear();
+        this.roles.putAll(roles);
+        this.members = null;
+        this.lastModified = VersionClock.next();
     }
 
     public boolean verifyParticipant(Long userId) {
 //        return !closed && (!confidential || hasRole(userId, "@all"));
-        return hasRole(userId, "@all");
+        return hasRole(userId, ChatRole.ALL);
     }
 
 //    public boolean verifyAdmin(Long userId) {
@@ -1,7 +1,12 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeListener;
+import ch.uzh.ifi.hase.soprafs21.helpers.TaggedIdGenerator;
+import ch.uzh.ifi.hase.soprafs21.helpers.VersionClock;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.*;
@@ -15,12 +20,17 @@ import java.util.*;
  */
 @Entity
 @Table(name = "USER")
+@EntityListeners(EntityChangeListener.class)
 public class User implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "userIdGenerator")
+    @GenericGenerator(
+            name = "userIdGenerator",
+            strategy = "ch.uzh.ifi.hase.soprafs21.helpers.TaggedIdGenerator",
+            parameters = @Parameter(name = TaggedIdGenerator.TYPE_PARAMETER, value = "USER"))
     private Long userId;
 
     @Column(nullable = false)
@@ -67,7 +77,7 @@ public class User implements Serializable {
     public void setCurrentGameId(Long gameId) {
         this.currentGameId = gameId;
         status = gameId == null? UserStatus.IDLE : UserStatus.PLAYING;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public Long getUserId() {
@@ -76,7 +86,7 @@ public class User implements Serializable {
 
     public void setUserId(Long userId) {
         this.userId = userId;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public String getPassword() {
@@ -85,7 +95,7 @@ public class User implements Serializable {
 
     public void setPassword(String password) {
         this.password = password;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public String getUsername() {
@@ -94,7 +104,7 @@ public class User implements Serializable {
 
     public void setUsername(String username) {
         this.username = username;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public String getToken() {
@@ -103,7 +113,7 @@ public class User implements Serializable {
 
     public void setToken(String token) {
         this.token = token;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public UserStatus getStatus() {
@@ -112,14 +122,14 @@ public class User implements Serializable {
 
     public void setStatus(UserStatus status) {
         this.status = status;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public String getEmail() {return email;}
 
     public void setEmail(String email) {
         this.email = email;
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public Set<Long> getFriends() {
@@ -143,38 +153,39 @@ public class User implements Serializable {
     }
 
     public void addToGameHistory(Long gameSummaryId) {
-        if (!this.gameHistory.contains(gameSummaryId)) this.gameHistory.add(gameSummaryId);
-        this.lastModified = System.currentTimeMillis();
+        if (this.gameHistory.contains(gameSummaryId)) return;
+        this.gameHistory.add(gameSummaryId);
+        this.lastModified = VersionClock.next();
     }
 
     public void addFriend(Long userId){
         friends.add(userId);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public void removeFriend(Long userId){
         friends.remove(userId);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public void addOutgoingFriendRequest(long userId){
         outgoingFriendRequests.add(userId);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public void addIncomingFriendRequest(long userId){
         incomingFriendRequests.add(userId);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public void removeOutgoingFriendRequest(long userId){
         outgoingFriendRequests.remove(userId);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public void removeIncomingFriendRequest(long userId){
         incomingFriendRequests.remove(userId);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public Set<Long> getObservedEntities() {
@@ -183,12 +194,12 @@ public class User implements Serializable {
 
     public void observeEntity(long entityId) {
         this.observedEntities.add(entityId);
-        this.lastModified = System.currentTimeMillis();
+        this.lastModified = VersionClock.next();
     }
 
     public void disregardEntity(long entityId) {
         this.observedEntities.remove(entityId);
-//        this.lastModified = System.currentTimeMillis(); // no need to push this to the client
+//        this.lastModified = VersionClock.next(); // no need to push this to the client
     }
 
     @Override
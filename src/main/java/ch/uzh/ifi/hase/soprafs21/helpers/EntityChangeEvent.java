@@ -0,0 +1,33 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+/**
+ * Event published whenever an observable entity was persisted, updated or removed.
+ * Subscribers observing the entity are notified once the surrounding transaction committed.
+ * @see EntityChangeListener
+ */
+public class EntityChangeEvent {
+
+    private final Long entityId;
+    private final Boolean lobby;
+
+    /**
+     * @param entityId id of the changed entity
+     * @param lobby for games: whether the game is an open lobby after the change, null for other entities
+     */
+    public EntityChangeEvent(Long entityId, Boolean lobby) {
+        this.entityId = entityId;
+        this.lobby = lobby;
+    }
+
+    public EntityChangeEvent(Long entityId) {
+        this(entityId, null);
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public Boolean getLobby() {
+        return lobby;
+    }
+}
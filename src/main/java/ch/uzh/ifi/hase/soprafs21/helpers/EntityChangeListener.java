@@ -0,0 +1,43 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import ch.uzh.ifi.hase.soprafs21.constant.GameState;
+import ch.uzh.ifi.hase.soprafs21.entity.*;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA entity listener that turns entity writes into EntityChangeEvents.
+ * Hibernate only calls it for entities that were actually dirty on flush,
+ * so subscribers get pushed exactly when something changed.
+ */
+public class EntityChangeListener {
+
+    @PostPersist
+    @PostUpdate
+    public void onWrite(Object entity) {
+        publish(entity, false);
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        publish(entity, true);
+    }
+
+    private void publish(Object entity, boolean removed) {
+        if (entity instanceof Game) {
+            Game game = (Game) entity;
+            boolean lobby = !removed && game.getGameState() == GameState.LOBBY;
+            SpringContext.publishEvent(new EntityChangeEvent(game.getGameId(), lobby));
+        }
+        else if (entity instanceof GameRound)
+            SpringContext.publishEvent(new EntityChangeEvent(((GameRound) entity).getGameRoundId()));
+        else if (entity instanceof GameSettings)
+            SpringContext.publishEvent(new EntityChangeEvent(((GameSettings) entity).getGameSettingsId()));
+        else if (entity instanceof MessageChannel)
+            SpringContext.publishEvent(new EntityChangeEvent(((MessageChannel) entity).getMessageChannelId()));
+        else if (entity instanceof User)
+            SpringContext.publishEvent(new EntityChangeEvent(((User) entity).getUserId()));
+    }
+}
@@ -0,0 +1,82 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import ch.uzh.ifi.hase.soprafs21.rest.dto.EntityDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of uncropped entity DTOs shared by all receivers.
+ * An entry is built once per change of its entity and invalidated after
+ * the changing transaction committed (see UpdateDispatcher).
+ * Since entries are built atomically per id, an invalidation waits for a load in progress,
+ * so no DTO read before the commit survives it.
+ * Batch loads aren't atomic per id, so their result is dropped again if anything was invalidated meanwhile.
+ * Receivers must never crop the cached instance itself, EntityDTO.find hands out copies.
+ */
+@Component
+public class EntityDTOCache {
+
+    private final Cache<Long, EntityDTO> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public EntityDTOCache(
+            @Value("${entity.cache.maximum-size:10000}") long maximumSize,
+            @Value("${entity.cache.expire-after-write-seconds:300}") long expireAfterWriteSeconds
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @param id
+     * @return the cached DTO of the entity, loaded if absent. null if there is no such entity.
+     */
+    public EntityDTO get(Long id) {
+        if (id == null) return null;
+        return cache.get(id, EntityDTO::load);
+    }
+
+    /**
+     * @param ids
+     * @return id -> cached DTO, for the entities that exist. the missing ones are loaded in batches.
+     */
+    public Map<Long, EntityDTO> getAll(Collection<Long> ids) {
+        Map<Long, EntityDTO> found = new HashMap<>();
+        Set<Long> missing = new HashSet<>();
+        for (Long id : ids) {
+            if (id == null) continue;
+            EntityDTO dto = cache.getIfPresent(id);
+            if (dto != null) found.put(id, dto);
+            else missing.add(id);
+        }
+        if (missing.isEmpty()) return found;
+        long invalidationsBefore = invalidations.get();
+        Map<Long, EntityDTO> loaded = EntityDTO.loadAll(missing);
+        for (Map.Entry<Long, EntityDTO> entry : loaded.entrySet()) cache.asMap().putIfAbsent(entry.getKey(), entry.getValue());
+        // loaded before an invalidation, possibly outdated and missed by it
+        if (invalidations.get() != invalidationsBefore) {
+            for (Map.Entry<Long, EntityDTO> entry : loaded.entrySet()) cache.asMap().remove(entry.getKey(), entry.getValue());
+        }
+        found.putAll(loaded);
+        return found;
+    }
+
+    public void invalidate(Long id) {
+        if (id == null) return;
+        invalidations.incrementAndGet();
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,114 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import ch.uzh.ifi.hase.soprafs21.rest.dto.EntityDTO;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of cropped entity DTOs in serialized form, shared by all receivers.
+ * Receivers of the same crop class (see EntityDTO.cropClass) get identical cropped DTOs,
+ * so every version of an entity is serialized once per crop class instead of once per receiver,
+ * and the JSON is spliced into the events as is.
+ * Only the versions of the newest lastModified are kept, and entries are invalidated
+ * together with the EntityDTOCache (see UpdateDispatcher).
+ * Serializations and reuses are counted as entity.json.serialized and entity.json.reused.
+ */
+@Component
+public class EntityJsonCache {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // entity id -> serialized versions of its newest lastModified
+    private final Cache<Long, Versions> cache;
+
+    private final Counter serialized = Metrics.counter("entity.json.serialized");
+    private final Counter reused = Metrics.counter("entity.json.reused");
+
+    public EntityJsonCache(
+            @Value("${entity.cache.maximum-size:10000}") long maximumSize,
+            @Value("${entity.cache.expire-after-write-seconds:300}") long expireAfterWriteSeconds
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @param dto DTO cropped for the receiver
+     * @param receiverId
+     * @return the serialized DTO, shared with all receivers of the same crop class
+     */
+    public Serialized get(EntityDTO dto, Long receiverId) {
+        Long lastModified = dto.getLastModified();
+        if (dto.getId() == null || lastModified == null) return serialize(dto);
+        Versions versions = cache.asMap().compute(dto.getId(), (id, cached) ->
+                (cached == null || cached.lastModified < lastModified)? new Versions(lastModified) : cached);
+        // an outdated copy, not worth keeping
+        if (versions.lastModified != lastModified) return serialize(dto);
+        String cropClass = dto.cropClass(receiverId);
+        Serialized found = versions.byCropClass.get(cropClass);
+        if (found != null) {
+            reused.increment();
+            return found;
+        }
+        return versions.byCropClass.computeIfAbsent(cropClass, c -> serialize(dto));
+    }
+
+    private Serialized serialize(EntityDTO dto) {
+        serialized.increment();
+        return new Serialized(objectMapper.valueToTree(dto));
+    }
+
+    public void invalidate(Long id) {
+        if (id != null) cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static final class Versions {
+
+        private final long lastModified;
+        // crop class -> serialized DTO
+        private final Map<String, Serialized> byCropClass = new ConcurrentHashMap<>();
+
+        private Versions(long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * a cropped DTO as JSON tree, for comparisons, and as text, for sending.
+     * shared by all receivers, the tree must never be modified.
+     */
+    public static final class Serialized {
+
+        private final JsonNode tree;
+        private final String json;
+
+        private Serialized(JsonNode tree) {
+            this.tree = tree;
+            this.json = tree.toString();
+        }
+
+        public JsonNode getTree() {
+            return tree;
+        }
+
+        public String getJson() {
+            return json;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * the words of a message text, split once.
+ * mentions are the words starting with @, e.g. @alice, @#1024 or @all,
+ * the command is the first word starting with /, followed by its arguments.
+ */
+public final class MessageTokens {
+
+    private final String[] words;
+    // indices of the mentions in words
+    private final List<Integer> mentions = new ArrayList<>();
+    // index of the command in words, words.length if there is none
+    private final int command;
+
+    private MessageTokens(String text) {
+        this.words = text.split(" ");
+        int found = words.length;
+        for (int i = 0; i < words.length; i++) {
+            if (words[i].startsWith("@")) mentions.add(i);
+            else if (found == words.length && words[i].startsWith("/")) found = i;
+        }
+        this.command = found;
+    }
+
+    public static MessageTokens parse(String text) {
+        return new MessageTokens(text == null? "" : text);
+    }
+
+    /**
+     * @return the mentions in order of appearance, including the @
+     */
+    public List<String> getMentions() {
+        if (mentions.isEmpty()) return Collections.emptyList();
+        List<String> found = new ArrayList<>();
+        for (int i : mentions) found.add(words[i]);
+        return found;
+    }
+
+    /**
+     * @return the command including the /, null if there is none
+     */
+    public String getCommand() {
+        return command < words.length? words[command] : null;
+    }
+
+    /**
+     * @param argNo position after the command, 0 for the command itself
+     * @return the argument, null if there is no command or no such argument
+     */
+    public String getArgument(int argNo) {
+        if (command == words.length || command + argNo >= words.length) return null;
+        return words[command + argNo];
+    }
+
+    /**
+     * @param replacement mention -> replacing word
+     * @return the text with every mention replaced, words are only replaced as a whole
+     */
+    public String replaceMentions(Function<String, String> replacement) {
+        String[] replaced = words.clone();
+        for (int i : mentions) replaced[i] = replacement.apply(words[i]);
+        return String.join(" ", replaced);
+    }
+}
@@ -0,0 +1,185 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import ch.uzh.ifi.hase.soprafs21.rest.dto.EntityDTO;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * the entities a receiver observes: everything reachable from its roots
+ * (the receiver itself and the entities it explicitly observes)
+ * through the children of the DTOs cropped for the receiver, within the limits of an ObservationPolicy.
+ * Kept up to date incrementally: only changed entities are reloaded and new children are expanded,
+ * both in batches (see EntityDTO.findAll).
+ * The graph is only traversed again, in memory and breadth first, if a root or the children of
+ * a changed entity changed, so every entity is observed at its shortest distance and cycles end there.
+ * Enrolling, leaving, befriending or getting a role all change the children of some entity,
+ * so they are picked up once that entity is reported as changed.
+ * Updated by a single thread, the observed ids may be read by any.
+ */
+public class Observation {
+
+    // ids -> cropped DTOs of the entities that exist
+    private final Function<Collection<Long>, Map<Long, EntityDTO>> loader;
+    private final ObservationPolicy policy;
+    private Set<Long> roots = new HashSet<>();
+    // observed entity id -> children of its cropped DTO that may be followed
+    private final Map<Long, Set<Long>> edges = new ConcurrentHashMap<>();
+    // referenced entities left out by the policy
+    private final Set<Long> stubs = new HashSet<>();
+
+    private final Set<Long> added = new HashSet<>();
+    private final Set<Long> removed = new HashSet<>();
+
+    /**
+     * @param receiverId id of the user DTOs are cropped for
+     * @param policy limits of the observation
+     */
+    public Observation(Long receiverId, ObservationPolicy policy) {
+        this(policy, ids -> {
+            Map<Long, EntityDTO> found = EntityDTO.findAll(ids);
+            for (EntityDTO dto : found.values()) dto.crop(receiverId, null);
+            return found;
+        });
+    }
+
+    /**
+     * @param receiverId id of the user DTOs are cropped for
+     */
+    public Observation(Long receiverId) {
+        this(receiverId, ObservationPolicy.DEFAULT);
+    }
+
+    /**
+     * @param loader provides the cropped DTO of an entity, null if there is none
+     * @param policy limits of the observation
+     */
+    public Observation(Function<Long, EntityDTO> loader, ObservationPolicy policy) {
+        this(policy, ids -> {
+            Map<Long, EntityDTO> found = new HashMap<>();
+            for (Long id : ids) {
+                EntityDTO dto = loader.apply(id);
+                if (dto != null) found.put(id, dto);
+            }
+            return found;
+        });
+    }
+
+    /**
+     * @param loader provides the cropped DTO of an entity, null if there is none
+     */
+    public Observation(Function<Long, EntityDTO> loader) {
+        this(loader, ObservationPolicy.UNBOUNDED);
+    }
+
+    private Observation(ObservationPolicy policy, Function<Collection<Long>, Map<Long, EntityDTO>> loader) {
+        this.loader = loader;
+        this.policy = policy;
+    }
+
+    /**
+     * @return a live view of the observed entity ids
+     */
+    public Set<Long> getObservedIds() {
+        return Collections.unmodifiableSet(edges.keySet());
+    }
+
+    /**
+     * @return ids observed since the latest update
+     */
+    public Set<Long> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return ids no longer observed since the latest update
+     */
+    public Set<Long> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return ids referenced by observed entities, but left out as of the latest traversal
+     */
+    public Set<Long> getStubs() {
+        return Collections.unmodifiableSet(stubs);
+    }
+
+    /**
+     * @param roots entities observed directly
+     * @param dirtyIds ids of entities that changed, null if anything might have
+     * @return the cropped DTOs of all changed and newly observed entities
+     */
+    public Map<Long, EntityDTO> update(Set<Long> roots, Set<Long> dirtyIds) {
+        added.clear();
+        removed.clear();
+        Map<Long, EntityDTO> found = new HashMap<>();
+        Set<Long> before = new HashSet<>(edges.keySet());
+        boolean changed = edges.isEmpty() || !roots.equals(this.roots);
+        this.roots = new HashSet<>(roots);
+
+        List<Long> reload = new ArrayList<>();
+        for (Long id : dirtyIds == null? edges.keySet() : dirtyIds) if (edges.containsKey(id)) reload.add(id);
+        Map<Long, EntityDTO> reloaded = reload.isEmpty()? Collections.emptyMap() : loader.apply(reload);
+        for (Long id : reload) {
+            EntityDTO dto = reloaded.get(id);
+            if (dto == null) {
+                edges.remove(id);
+                changed = true;
+                continue;
+            }
+            found.put(id, dto);
+            Set<Long> children = policy.childrenOf(dto);
+            if (!children.equals(edges.put(id, children))) changed = true;
+        }
+        if (changed) {
+            traverse(found);
+            for (Long id : edges.keySet()) if (!before.remove(id)) added.add(id);
+            removed.addAll(before);
+        }
+        return found;
+    }
+
+    /**
+     * walks the graph breadth first, loading the entities not observed yet level by level,
+     * and forgets the entities no longer reached.
+     */
+    private void traverse(Map<Long, EntityDTO> found) {
+        Set<Long> reached = new HashSet<>();
+        stubs.clear();
+        Collection<Long> level = roots;
+        for (int depth = 0; !level.isEmpty(); depth++) {
+            Set<Long> admitted = new LinkedHashSet<>();
+            List<Long> missing = new ArrayList<>();
+            for (Long id : level) {
+                if (reached.contains(id) || admitted.contains(id)) continue;
+                if (reached.size() + admitted.size() >= policy.getMaxEntities()) {
+                    stubs.add(id);
+                    continue;
+                }
+                admitted.add(id);
+                if (!edges.containsKey(id)) missing.add(id);
+            }
+            if (!missing.isEmpty()) {
+                for (Map.Entry<Long, EntityDTO> entity : loader.apply(missing).entrySet()) {
+                    found.put(entity.getKey(), entity.getValue());
+                    edges.put(entity.getKey(), policy.childrenOf(entity.getValue()));
+                }
+            }
+            List<Long> next = new ArrayList<>();
+            for (Long id : admitted) {
+                Set<Long> children = edges.get(id);
+                // no such entity
+                if (children == null) continue;
+                reached.add(id);
+                if (policy.expands(id, depth)) next.addAll(children);
+                else stubs.addAll(children);
+            }
+            level = next;
+        }
+        stubs.removeAll(reached);
+        edges.keySet().retainAll(reached);
+        found.keySet().retainAll(reached);
+    }
+}
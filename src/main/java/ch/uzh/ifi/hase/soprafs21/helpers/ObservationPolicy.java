@@ -0,0 +1,92 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.EntityDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.MessageChannelDTO;
+
+import java.util.*;
+
+/**
+ * limits how far an Observation follows the children of the observed entities.
+ * the roots have depth 0, their children depth 1 and so on.
+ * an entity is only expanded up to the depth given for its type and up to maxDepth,
+ * e.g. friends of the receiver are observed, but not their friends and games.
+ * message channels only follow their newest maxMessages messages,
+ * and no more than maxEntities entities are observed in total.
+ * Referenced entities left out are stubs: their ids are known from the referencing DTO,
+ * clients load them on demand through GET /entity/{id} or observe them explicitly.
+ */
+public class ObservationPolicy {
+
+    public static final int DEFAULT_MAX_DEPTH = 4;
+    public static final int DEFAULT_MAX_ENTITIES = 500;
+    public static final int DEFAULT_MAX_MESSAGES = 50;
+
+    public static final ObservationPolicy DEFAULT =
+            new ObservationPolicy(DEFAULT_MAX_DEPTH, DEFAULT_MAX_ENTITIES, DEFAULT_MAX_MESSAGES);
+    public static final ObservationPolicy UNBOUNDED = new ObservationPolicy(
+            Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, new EnumMap<>(EntityType.class));
+
+    private final int maxDepth;
+    private final int maxEntities;
+    private final int maxMessages;
+    // type -> deepest level entities of the type are expanded at, unlimited if absent
+    private final Map<EntityType, Integer> expandDepths;
+
+    public ObservationPolicy(int maxDepth, int maxEntities, int maxMessages) {
+        this(maxDepth, maxEntities, maxMessages, defaultExpandDepths());
+    }
+
+    private ObservationPolicy(int maxDepth, int maxEntities, int maxMessages, Map<EntityType, Integer> expandDepths) {
+        this.maxDepth = maxDepth;
+        this.maxEntities = maxEntities;
+        this.maxMessages = maxMessages;
+        this.expandDepths = expandDepths;
+    }
+
+    private static Map<EntityType, Integer> defaultExpandDepths() {
+        Map<EntityType, Integer> depths = new EnumMap<>(EntityType.class);
+        // only the receiver and users observed explicitly, not friends of friends
+        depths.put(EntityType.USER, 0);
+        // the current game of the receiver, with its players, chat, settings and round
+        depths.put(EntityType.GAME, 1);
+        // the game history is listed, the details only once a summary is observed
+        depths.put(EntityType.GAME_SUMMARY, 0);
+        depths.put(EntityType.GAME_ROUND, 2);
+        depths.put(EntityType.GAME_ROUND_SUMMARY, 2);
+        depths.put(EntityType.MESSAGE_CHANNEL, 2);
+        depths.put(EntityType.MESSAGE, 3);
+        return depths;
+    }
+
+    public int getMaxEntities() {
+        return maxEntities;
+    }
+
+    /**
+     * @param id
+     * @param depth distance of the entity from the roots
+     * @return whether the children of the entity are observed
+     */
+    public boolean expands(Long id, int depth) {
+        if (depth >= maxDepth) return false;
+        Integer expandDepth = expandDepths.get(EntityType.get(id));
+        return expandDepth == null || depth <= expandDepth;
+    }
+
+    /**
+     * @param dto cropped DTO
+     * @return the children that may be followed, regardless of depth
+     */
+    public Set<Long> childrenOf(EntityDTO dto) {
+        Set<Long> children = new HashSet<>(dto.getChildren());
+        children.remove(null);
+        if (dto instanceof MessageChannelDTO) {
+            List<Long> messages = ((MessageChannelDTO) dto).getMessages();
+            if (messages != null && messages.size() > maxMessages) {
+                for (Long messageId : messages.subList(0, messages.size() - maxMessages)) children.remove(messageId);
+            }
+        }
+        return children;
+    }
+}
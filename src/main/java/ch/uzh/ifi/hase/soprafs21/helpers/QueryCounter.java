@@ -0,0 +1,26 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate statement inspector counting the SQL statements issued by the current thread.
+ * registered through spring.jpa.properties.hibernate.session_factory.statement_inspector.
+ * Statements are passed on unchanged.
+ */
+public class QueryCounter implements StatementInspector {
+
+    private static final ThreadLocal<long[]> count = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        count.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * @return number of statements issued by the current thread so far
+     */
+    public static long get() {
+        return count.get()[0];
+    }
+}
@@ -1,6 +1,7 @@
 package ch.uzh.ifi.hase.soprafs21.helpers;
 
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Component;
@@ -21,7 +22,21 @@ public class SpringContext implements ApplicationContextAware {
      * @return
      */
     public static <T extends Object> T getBean(Class<T> beanClass) {
-        return context.getBean(beanClass);
+        if (context == null) return null;
+        try {
+            return context.getBean(beanClass);
+        } catch (NoSuchBeanDefinitionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * publishes an application event if a context is available.
+     * does nothing otherwise (e.g. in plain unit tests).
+     * @param event
+     */
+    public static void publishEvent(Object event) {
+        if (context != null) context.publishEvent(event);
     }
 
     @Override
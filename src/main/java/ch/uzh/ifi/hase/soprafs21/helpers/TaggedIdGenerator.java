@@ -0,0 +1,39 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * id generator drawing serial numbers from the sequence
+ * and tagging them with the entity type given by the "type" parameter.
+ * @see EntityType
+ */
+public class TaggedIdGenerator extends SequenceStyleGenerator {
+
+    public static final String TYPE_PARAMETER = "type";
+
+    private EntityType type;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        try {
+            this.type = EntityType.valueOf(params.getProperty(TYPE_PARAMETER));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new MappingException("TaggedIdGenerator requires a valid entity type parameter", e);
+        }
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        Number serial = (Number) super.generate(session, object);
+        return type.id(serial.longValue(), 0);
+    }
+}
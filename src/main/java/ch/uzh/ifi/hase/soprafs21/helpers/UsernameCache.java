@@ -0,0 +1,91 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the user ids by username, used to resolve mentions in chat messages.
+ * Usernames without user are cached as well, e.g. role mentions like @all,
+ * so names must be invalidated whenever a user takes or gives up one (see UserService).
+ */
+@Component
+public class UsernameCache {
+
+    private final UserRepository userRepository;
+    // username -> user id, empty if no user has the name
+    private final Cache<String, Optional<Long>> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public UsernameCache(
+            @Qualifier("userRepository") UserRepository userRepository,
+            @Value("${username.cache.maximum-size:10000}") long maximumSize,
+            @Value("${username.cache.expire-after-write-seconds:300}") long expireAfterWriteSeconds
+    ) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * looks up several usernames, the ones not cached with a single query
+     * @param usernames
+     * @return username -> user id, for the usernames taken
+     */
+    public Map<String, Long> resolve(Collection<String> usernames) {
+        Map<String, Long> found = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String username : usernames) {
+            Optional<Long> cached = cache.getIfPresent(username);
+            if (cached == null) missing.add(username);
+            else cached.ifPresent(userId -> found.put(username, userId));
+        }
+        if (missing.isEmpty()) return found;
+        long invalidationsBefore = invalidations.get();
+        Map<String, Optional<Long>> loaded = new HashMap<>();
+        for (String username : missing) loaded.put(username, Optional.empty());
+        for (User user : userRepository.findAllByUsernameIn(missing)) loaded.put(user.getUsername(), Optional.of(user.getUserId()));
+        for (Map.Entry<String, Optional<Long>> entry : loaded.entrySet()) {
+            cache.asMap().putIfAbsent(entry.getKey(), entry.getValue());
+            entry.getValue().ifPresent(userId -> found.put(entry.getKey(), userId));
+        }
+        // loaded before an invalidation, possibly outdated and missed by it
+        if (invalidations.get() != invalidationsBefore) {
+            for (Map.Entry<String, Optional<Long>> entry : loaded.entrySet()) cache.asMap().remove(entry.getKey(), entry.getValue());
+        }
+        return found;
+    }
+
+    /**
+     * invalidates usernames right away and, within a transaction, once more after it completed,
+     * as lookups running until then still find the old state
+     * @param usernames
+     */
+    public void invalidate(String... usernames) {
+        invalidateNow(usernames);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                invalidateNow(usernames);
+            }
+        });
+    }
+
+    private void invalidateNow(String... usernames) {
+        invalidations.incrementAndGet();
+        for (String username : usernames) if (username != null) cache.invalidate(username);
+    }
+}
@@ -0,0 +1,24 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * hands out the versions stored as lastModified in the entities.
+ * versions strictly increase across all entities and threads, so no two changes share a version
+ * and the version a client received tells exactly which changes it has seen.
+ * they follow the wall clock in milliseconds wherever it is ahead, so versions persisted
+ * by a previous run stay below the ones handed out after a restart.
+ */
+public final class VersionClock {
+
+    private static final AtomicLong latest = new AtomicLong();
+
+    private VersionClock() {}
+
+    /**
+     * @return a version greater than all versions handed out before
+     */
+    public static long next() {
+        return latest.updateAndGet(previous -> Math.max(previous + 1, System.currentTimeMillis()));
+    }
+}
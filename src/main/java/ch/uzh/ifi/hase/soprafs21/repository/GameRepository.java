@@ -1,12 +1,17 @@
 package ch.uzh.ifi.hase.soprafs21.repository;
 
+import ch.uzh.ifi.hase.soprafs21.constant.GameState;
 import ch.uzh.ifi.hase.soprafs21.entity.Game;
 import org.springframework.data.domain.Example;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository("gameRepository")
 public interface GameRepository extends JpaRepository<Game, Long> {
 
     Game findByGameId(Long gameId);
+
+    List<Game> findAllByGameState(GameState gameState);
 }
@@ -2,11 +2,23 @@ package ch.uzh.ifi.hase.soprafs21.repository;
 
 import ch.uzh.ifi.hase.soprafs21.entity.MessageChannel;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+
 
 @Repository("messageChannelRepository")
 public interface MessageChannelRepository extends JpaRepository<MessageChannel, Long> {
     MessageChannel findByMessageChannelId(Long messageChannelId);
 
+    /**
+     * finds a channel and locks its row until the end of the transaction, so appends to its chat log queue up
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from MessageChannel c where c.messageChannelId = :messageChannelId")
+    MessageChannel lockByMessageChannelId(@Param("messageChannelId") Long messageChannelId);
+
 }
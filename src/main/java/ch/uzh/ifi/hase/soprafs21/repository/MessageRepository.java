@@ -1,10 +1,13 @@
 package ch.uzh.ifi.hase.soprafs21.repository;
 
 import ch.uzh.ifi.hase.soprafs21.entity.Message;
-import ch.uzh.ifi.hase.soprafs21.entity.MessageChannel;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -12,4 +15,45 @@ import java.util.List;
 public interface MessageRepository extends JpaRepository<Message, Long> {
     Message findByMessageId(Long messageId);
 
+    /**
+     * @return sequence number of the latest message of the channel, null if there is none
+     */
+    @Query("select max(m.sequenceNumber) from Message m where m.messageChannelId = :messageChannelId")
+    Long findLastSequenceNumber(@Param("messageChannelId") Long messageChannelId);
+
+    /**
+     * id of a message and of the channel it was posted to, without loading the message
+     */
+    interface MessageIdView {
+        Long getMessageChannelId();
+        Long getMessageId();
+    }
+
+    /**
+     * reads the end of several chat logs at once.
+     * sequence numbers have no gaps, so the latest messages are the ones within count of the last one.
+     * @return ids of the latest count messages of each channel, oldest first
+     */
+    @Query("select m.messageChannelId as messageChannelId, m.messageId as messageId from Message m" +
+            " where m.messageChannelId in :messageChannelIds and m.sequenceNumber + :count >" +
+            " (select max(l.sequenceNumber) from Message l where l.messageChannelId = m.messageChannelId)" +
+            " order by m.sequenceNumber asc")
+    List<MessageIdView> findLatestIds(@Param("messageChannelIds") Collection<Long> messageChannelIds,
+                                      @Param("count") long count);
+
+    /**
+     * @return the oldest messages of the channel posted strictly between since and before, oldest first
+     */
+    @Query("select m from Message m where m.messageChannelId = :messageChannelId" +
+            " and m.timestamp > :since and m.timestamp < :before order by m.timestamp asc, m.messageId asc")
+    List<Message> findOldest(@Param("messageChannelId") Long messageChannelId,
+                             @Param("since") Long since, @Param("before") Long before, Pageable pageable);
+
+    /**
+     * @return the latest messages of the channel posted strictly between since and before, latest first
+     */
+    @Query("select m from Message m where m.messageChannelId = :messageChannelId" +
+            " and m.timestamp > :since and m.timestamp < :before order by m.timestamp desc, m.messageId desc")
+    List<Message> findLatest(@Param("messageChannelId") Long messageChannelId,
+                             @Param("since") Long since, @Param("before") Long before, Pageable pageable);
 }
@@ -5,6 +5,7 @@ import ch.uzh.ifi.hase.soprafs21.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -12,6 +13,7 @@ import java.util.List;
 public interface UserRepository extends JpaRepository<User, Long> {
     User findByUserId(long id);
     User findByUsername(String username);
+    List<User> findAllByUsernameIn(Collection<String> usernames);
     List<User> findAllByStatus(UserStatus status);
 
 }
@@ -2,11 +2,17 @@ package ch.uzh.ifi.hase.soprafs21.rest.dto;
 
 import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityDTOCache;
+import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
+import ch.uzh.ifi.hase.soprafs21.repository.MessageRepository;
 import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs21.service.ChatService;
+import ch.uzh.ifi.hase.soprafs21.service.GameStore;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.data.jpa.repository.JpaRepository;
 
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 
 public interface EntityDTO {
     Long getId();
@@ -15,24 +21,148 @@ public interface EntityDTO {
     Set<Long> getChildren();
     void crop(Long receiverId, String cropHint);
 
+    /**
+     * receivers of the same crop class get identical cropped DTOs (see EntityJsonCache).
+     * must be the same before and after cropping.
+     * @param receiverId
+     * @return the crop class of the receiver
+     */
+    String cropClass(Long receiverId);
 
+    /**
+     * @return a shallow copy of this DTO that can be cropped without affecting the original.
+     * crop only ever replaces fields, so collections may be shared.
+     */
+    EntityDTO copy();
+
+    /**
+     * finds the DTO of an entity in the shared cache.
+     * @param id
+     * @return a private copy of the DTO, null if there is no such entity
+     */
     public static EntityDTO find(Long id) {
+        EntityDTO dto = SpringContext.getBean(EntityDTOCache.class).get(id);
+        return (dto == null)? null : dto.copy();
+    }
+
+    /**
+     * finds the DTOs of several entities in the shared cache, loading the missing ones in batches.
+     * @param ids
+     * @return id -> private copy of the DTO, for the entities that exist
+     */
+    public static Map<Long, EntityDTO> findAll(Collection<Long> ids) {
+        Map<Long, EntityDTO> found = SpringContext.getBean(EntityDTOCache.class).getAll(ids);
+        found.replaceAll((id, dto) -> dto.copy());
+        return found;
+    }
+
+    /**
+     * loads an entity from its repository and converts it to a DTO, bypassing the cache.
+     * timed as entity.dto.load per entity type.
+     * @param id
+     * @return the DTO, null if there is no such entity
+     */
+    public static EntityDTO load(Long id) {
         EntityType type = EntityType.get(id);
+        Timer.Sample sample = Timer.start();
+        try {
+            return convert(id, type);
+        } finally {
+            sample.stop(Metrics.timer("entity.dto.load", "type", type.name()));
+        }
+    }
+
+    /**
+     * loads several entities and converts them to DTOs, bypassing the cache.
+     * the ids are grouped by entity type, each group is loaded with a single query.
+     * timed as entity.dto.load per entity type.
+     * @param ids
+     * @return id -> DTO, for the entities that exist
+     */
+    public static Map<Long, EntityDTO> loadAll(Collection<Long> ids) {
+        Map<EntityType, List<Long>> byType = new EnumMap<>(EntityType.class);
+        for (Long id : ids) byType.computeIfAbsent(EntityType.get(id), type -> new ArrayList<>()).add(id);
+        Map<Long, EntityDTO> found = new HashMap<>();
+        for (Map.Entry<EntityType, List<Long>> group : byType.entrySet()) {
+            EntityType type = group.getKey();
+            Timer.Sample sample = Timer.start();
+            try {
+                for (EntityDTO dto : convertAll(group.getValue(), type)) found.put(dto.getId(), dto);
+            } finally {
+                sample.stop(Metrics.timer("entity.dto.load", "type", type.name()));
+            }
+        }
+        return found;
+    }
+
+    private static EntityDTO convert(Long id, EntityType type) {
+        // live games and their rounds are only up to date in the store
+        if (type == EntityType.GAME || type == EntityType.GAME_ROUND) {
+            GameStore gameStore = SpringContext.getBean(GameStore.class);
+            if (gameStore.isEnabled()) return gameStore.findDTO(id);
+        }
         JpaRepository repo = EntityType.getRepo(id);
         if (repo == null) return null;
         Optional entity = repo.findById(id);
         if (!entity.isPresent()) return null;
+        EntityDTO dto = convertEntity(entity.get(), type);
+        if (type == EntityType.MESSAGE_CHANNEL) addLatestMessages(List.of(dto));
+        return dto;
+    }
+
+    private static List<EntityDTO> convertAll(List<Long> ids, EntityType type) {
+        List<EntityDTO> converted = new ArrayList<>();
+        if (type == EntityType.GAME || type == EntityType.GAME_ROUND) {
+            GameStore gameStore = SpringContext.getBean(GameStore.class);
+            if (gameStore.isEnabled()) {
+                for (Long id : ids) {
+                    EntityDTO dto = gameStore.findDTO(id);
+                    if (dto != null) converted.add(dto);
+                }
+                return converted;
+            }
+        }
+        JpaRepository repo = EntityType.getRepo(type);
+        if (repo == null) return converted;
+        for (Object entity : repo.findAllById(ids)) {
+            EntityDTO dto = convertEntity(entity, type);
+            if (dto != null) converted.add(dto);
+        }
+        if (type == EntityType.MESSAGE_CHANNEL) addLatestMessages(converted);
+        return converted;
+    }
+
+    private static EntityDTO convertEntity(Object entity, EntityType type) {
         switch(type) {
-            case USER: return DTOMapper.INSTANCE.convertEntityToUserDTO((User) entity.get());
-            case GAME: return DTOMapper.INSTANCE.convertEntityToGameDTO((Game) entity.get());
-            case GAME_SUMMARY: return DTOMapper.INSTANCE.convertEntityToGameSummaryDTO((GameSummary) entity.get());
-            case GAME_ROUND_SUMMARY: return DTOMapper.INSTANCE.convertEntityToGameRoundSummaryDTO((GameRoundSummary) entity.get());
-            case GAME_SETTINGS: return DTOMapper.INSTANCE.convertEntityToGameSettingsDTO((GameSettings) entity.get());
-            case GAME_ROUND: return DTOMapper.INSTANCE.convertEntityToGameRoundDTO((GameRound) entity.get());
-            case MESSAGE_CHANNEL: return DTOMapper.INSTANCE.convertEntityToMessageChannelDTO((MessageChannel) entity.get());
-            case MESSAGE: return DTOMapper.INSTANCE.convertEntityToMessageDTO((Message) entity.get());
+            case USER: return DTOMapper.INSTANCE.convertEntityToUserDTO((User) entity);
+            case GAME: return DTOMapper.INSTANCE.convertEntityToGameDTO((Game) entity);
+            case GAME_SUMMARY: return DTOMapper.INSTANCE.convertEntityToGameSummaryDTO((GameSummary) entity);
+            case GAME_ROUND_SUMMARY: return DTOMapper.INSTANCE.convertEntityToGameRoundSummaryDTO((GameRoundSummary) entity);
+            case GAME_SETTINGS: return DTOMapper.INSTANCE.convertEntityToGameSettingsDTO((GameSettings) entity);
+            case GAME_ROUND: return DTOMapper.INSTANCE.convertEntityToGameRoundDTO((GameRound) entity);
+            case MESSAGE_CHANNEL: return DTOMapper.INSTANCE.convertEntityToMessageChannelDTO((MessageChannel) entity);
+            case MESSAGE: return DTOMapper.INSTANCE.convertEntityToMessageDTO((Message) entity);
 
             default: return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * lists the ids of the latest page of each chat log, read from the end of the logs in one query.
+     * clients load older messages with GET /chat/{chatId}
+     * @param channels DTOs of message channels
+     */
+    private static void addLatestMessages(List<EntityDTO> channels) {
+        if (channels.isEmpty()) return;
+        Map<Long, List<Long>> messages = new HashMap<>();
+        for (EntityDTO channel : channels) {
+            List<Long> latest = new ArrayList<>();
+            ((MessageChannelDTO) channel).setMessages(latest);
+            messages.put(channel.getId(), latest);
+        }
+        for (MessageRepository.MessageIdView message : SpringContext.getBean(MessageRepository.class)
+                .findLatestIds(messages.keySet(), ChatService.DEFAULT_PAGE_SIZE)) {
+            messages.get(message.getMessageChannelId()).add(message.getMessageId());
+        }
+    }
+}
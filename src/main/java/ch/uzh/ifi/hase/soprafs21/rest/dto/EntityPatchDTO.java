@@ -0,0 +1,94 @@
+package ch.uzh.ifi.hase.soprafs21.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a single JSON Patch (RFC 6902) operation on an entity DTO the client already holds.
+ * only "add", "replace" and "remove" are used. appended list elements are sent as "add" to "/field/-".
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EntityPatchDTO {
+
+    private final String op;
+    private final String path;
+    private final JsonNode value;
+
+    public EntityPatchDTO(String op, String path, JsonNode value) {
+        this.op = op;
+        this.path = path;
+        this.value = value;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public JsonNode getValue() {
+        return value;
+    }
+
+    /**
+     * computes the operations turning one serialized DTO into another.
+     * top level fields are compared one by one, maps are patched per key
+     * and lists that only grew are patched by appending.
+     * @param previous JSON object the client holds
+     * @param current JSON object the client should hold
+     * @return the operations, empty if both are equal
+     */
+    public static List<EntityPatchDTO> diff(JsonNode previous, JsonNode current) {
+        List<EntityPatchDTO> patches = new ArrayList<>();
+        for (Iterator<Map.Entry<String, JsonNode>> it = current.fields(); it.hasNext();) {
+            Map.Entry<String, JsonNode> field = it.next();
+            String path = "/" + escape(field.getKey());
+            JsonNode before = previous.get(field.getKey());
+            JsonNode after = field.getValue();
+            if (before == null) patches.add(new EntityPatchDTO("add", path, after));
+            else if (before.equals(after)) continue;
+            else if (before.isObject() && after.isObject()) diffMap(path, before, after, patches);
+            else if (before.isArray() && after.isArray() && isPrefix(before, after)) {
+                for (int i = before.size(); i < after.size(); i++)
+                    patches.add(new EntityPatchDTO("add", path + "/-", after.get(i)));
+            }
+            else patches.add(new EntityPatchDTO("replace", path, after));
+        }
+        for (Iterator<String> it = previous.fieldNames(); it.hasNext();) {
+            String name = it.next();
+            if (!current.has(name)) patches.add(new EntityPatchDTO("remove", "/" + escape(name), null));
+        }
+        return patches;
+    }
+
+    private static void diffMap(String path, JsonNode before, JsonNode after, List<EntityPatchDTO> patches) {
+        for (Iterator<Map.Entry<String, JsonNode>> it = after.fields(); it.hasNext();) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            JsonNode value = before.get(entry.getKey());
+            if (value == null || !value.equals(entry.getValue()))
+                patches.add(new EntityPatchDTO(value == null? "add" : "replace", path + "/" + escape(entry.getKey()), entry.getValue()));
+        }
+        for (Iterator<String> it = before.fieldNames(); it.hasNext();) {
+            String key = it.next();
+            if (!after.has(key)) patches.add(new EntityPatchDTO("remove", path + "/" + escape(key), null));
+        }
+    }
+
+    private static boolean isPrefix(JsonNode prefix, JsonNode array) {
+        if (prefix.size() > array.size()) return false;
+        for (int i = 0; i < prefix.size(); i++) if (!prefix.get(i).equals(array.get(i))) return false;
+        return true;
+    }
+
+    // JSON pointer escaping (RFC 6901)
+    private static String escape(String token) {
+        return token.replace("~", "~0").replace("/", "~1");
+    }
+}
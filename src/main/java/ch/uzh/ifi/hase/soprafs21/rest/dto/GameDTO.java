@@ -13,7 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-public class GameDTO implements EntityDTO {
+public class GameDTO implements EntityDTO, Cloneable {
 
     // basic
     private Long id;
@@ -162,6 +162,15 @@ public class GameDTO implements EntityDTO {
         return children;
     }
 
+    @Override
+    public GameDTO copy() {
+        try {
+            return (GameDTO) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public void crop(Long receiverId, String cropHint) {
         PlayerState state = playerStates.get(receiverId);
@@ -171,4 +180,10 @@ public class GameDTO implements EntityDTO {
             currentRoundId = null;
         }
     }
+
+    @Override
+    public String cropClass(Long receiverId) {
+        PlayerState state = playerStates.get(receiverId);
+        return (state != null && state.isEnrolled())? "enrolled" : "public";
+    }
 }
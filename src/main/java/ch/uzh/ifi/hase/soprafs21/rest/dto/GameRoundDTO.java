@@ -6,7 +6,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-public class GameRoundDTO implements EntityDTO {
+public class GameRoundDTO implements EntityDTO, Cloneable {
 
     private Long id;
     private String title;
@@ -92,6 +92,15 @@ public class GameRoundDTO implements EntityDTO {
         return scores == null? new HashSet<>() : scores.keySet();
     }
 
+    @Override
+    public GameRoundDTO copy() {
+        try {
+            return (GameRoundDTO) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public void crop(Long receiverId, String cropHint) {
         if (!scores.containsKey(receiverId)) {
@@ -106,4 +115,8 @@ public class GameRoundDTO implements EntityDTO {
         LastModified = lastModified;
     }
 
+    @Override
+    public String cropClass(Long receiverId) {
+        return (scores != null && scores.containsKey(receiverId))? "player" : "public";
+    }
 }
@@ -6,7 +6,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-public class GameRoundSummaryDTO implements EntityDTO {
+public class GameRoundSummaryDTO implements EntityDTO, Cloneable {
 
     private Long id;
     private String title;
@@ -86,6 +86,15 @@ public class GameRoundSummaryDTO implements EntityDTO {
         return scores == null? new HashSet<>() : scores.keySet();
     }
 
+    @Override
+    public GameRoundSummaryDTO copy() {
+        try {
+            return (GameRoundSummaryDTO) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public void crop(Long receiverId, String cropHint) {
         if (!scores.containsKey(receiverId)) {
@@ -96,5 +105,8 @@ public class GameRoundSummaryDTO implements EntityDTO {
         }
     }
 
-
+    @Override
+    public String cropClass(Long receiverId) {
+        return (scores != null && scores.containsKey(receiverId))? "player" : "public";
+    }
 }
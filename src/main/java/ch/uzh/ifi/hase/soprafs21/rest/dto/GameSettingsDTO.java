@@ -7,7 +7,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-public class GameSettingsDTO implements EntityDTO {
+public class GameSettingsDTO implements EntityDTO, Cloneable {
 
     private Long id;
     private String name;
@@ -124,8 +124,22 @@ public class GameSettingsDTO implements EntityDTO {
         return new HashSet<>();
     }
 
+    @Override
+    public GameSettingsDTO copy() {
+        try {
+            return (GameSettingsDTO) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public void crop(Long receiverId, String cropHint) {
         // it's all public
     }
+
+    @Override
+    public String cropClass(Long receiverId) {
+        return "public";
+    }
 }
@@ -7,7 +7,7 @@ import ch.uzh.ifi.hase.soprafs21.entity.GameRoundSummary;
 
 import java.util.*;
 
-public class GameSummaryDTO implements EntityDTO {
+public class GameSummaryDTO implements EntityDTO, Cloneable {
 
     private Long id;
     private String name;
@@ -109,6 +109,15 @@ public class GameSummaryDTO implements EntityDTO {
         return children;
     }
 
+    @Override
+    public GameSummaryDTO copy() {
+        try {
+            return (GameSummaryDTO) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public void crop(Long receiverId, String cropHint) {
         if (!scores.containsKey(receiverId)) {
@@ -117,4 +126,9 @@ public class GameSummaryDTO implements EntityDTO {
             roundIds = null;
         }
     }
+
+    @Override
+    public String cropClass(Long receiverId) {
+        return (scores != null && scores.containsKey(receiverId))? "player" : "public";
+    }
 }
@@ -0,0 +1,100 @@
+package ch.uzh.ifi.hase.soprafs21.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
+import ch.uzh.ifi.hase.soprafs21.constant.PlayerState;
+
+import java.util.Objects;
+
+/**
+ * summary of an open lobby, as listed in the lobby directory
+ */
+public class LobbyDTO {
+
+    private Long gameId;
+    private Long gameSettingsId;
+    private String name;
+    private String subreddit;
+    private MemeType memeType;
+    private Integer totalRounds;
+    private Integer maxPlayers;
+    private Integer enrolledPlayers;
+
+    /**
+     * @param game uncropped DTO of a game in the lobby state
+     * @param settings DTO of its settings
+     * @return the summary
+     */
+    public static LobbyDTO of(GameDTO game, GameSettingsDTO settings) {
+        LobbyDTO lobby = new LobbyDTO();
+        lobby.gameId = game.getId();
+        lobby.gameSettingsId = settings.getId();
+        lobby.name = settings.getName();
+        lobby.subreddit = settings.getSubreddit();
+        lobby.memeType = settings.getMemeType();
+        lobby.totalRounds = settings.getTotalRounds();
+        lobby.maxPlayers = settings.getMaxPlayers();
+        int enrolled = 0;
+        if (game.getPlayerStates() != null) {
+            for (PlayerState state : game.getPlayerStates().values()) if (state.isEnrolled()) enrolled++;
+        }
+        lobby.enrolledPlayers = enrolled;
+        return lobby;
+    }
+
+    public Long getGameId() {
+        return gameId;
+    }
+
+    public Long getGameSettingsId() {
+        return gameSettingsId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSubreddit() {
+        return subreddit;
+    }
+
+    public MemeType getMemeType() {
+        return memeType;
+    }
+
+    public Integer getTotalRounds() {
+        return totalRounds;
+    }
+
+    public Integer getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    public Integer getEnrolledPlayers() {
+        return enrolledPlayers;
+    }
+
+    public int getFreeSlots() {
+        if (maxPlayers == null) return 0;
+        return Math.max(0, maxPlayers - enrolledPlayers);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LobbyDTO)) return false;
+        LobbyDTO other = (LobbyDTO) o;
+        return Objects.equals(gameId, other.gameId)
+                && Objects.equals(gameSettingsId, other.gameSettingsId)
+                && Objects.equals(name, other.name)
+                && Objects.equals(subreddit, other.subreddit)
+                && memeType == other.memeType
+                && Objects.equals(totalRounds, other.totalRounds)
+                && Objects.equals(maxPlayers, other.maxPlayers)
+                && Objects.equals(enrolledPlayers, other.enrolledPlayers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(gameId, gameSettingsId, name, subreddit, memeType, totalRounds, maxPlayers, enrolledPlayers);
+    }
+}
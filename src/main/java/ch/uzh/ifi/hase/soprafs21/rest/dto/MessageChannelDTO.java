@@ -1,17 +1,17 @@
 package ch.uzh.ifi.hase.soprafs21.rest.dto;
 
 import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
-import ch.uzh.ifi.hase.soprafs21.entity.Message;
 
 import java.util.*;
 
-public class MessageChannelDTO implements EntityDTO {
+public class MessageChannelDTO implements EntityDTO, Cloneable {
 
     private Long id;
 //    private boolean confidential; // unused feature
 //    private boolean closed; // unused feature
     private Map<Long, String> roles;
-    private List<Long> messages;
+    // ids of the latest messages, oldest first
+    private List<Long> messages = new ArrayList<>();
     private Long associatedGameId;
 
     private EntityType type = EntityType.MESSAGE_CHANNEL;
@@ -55,9 +55,8 @@ public class MessageChannelDTO implements EntityDTO {
         return messages;
     }
 
-    public void setMessages(List<Message> messages) {
-        this.messages = new ArrayList<>();
-        for (Message message : messages) this.messages.add(message.getMessageId());
+    public void setMessages(List<Long> messages) {
+        this.messages = messages;
     }
 
     public Long getAssociatedGameId() {
@@ -90,10 +89,24 @@ public class MessageChannelDTO implements EntityDTO {
         return children;
     }
 
+    @Override
+    public MessageChannelDTO copy() {
+        try {
+            return (MessageChannelDTO) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public void crop(Long receiverId, String cropHint) {
         if (!roles.containsKey(receiverId) || !roles.get(receiverId).contains("@all")) {
             messages = null;
         }
     }
+
+    @Override
+    public String cropClass(Long receiverId) {
+        return (roles.containsKey(receiverId) && roles.get(receiverId).contains("@all"))? "reader" : "public";
+    }
 }
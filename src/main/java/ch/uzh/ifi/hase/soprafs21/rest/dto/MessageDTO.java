@@ -7,7 +7,7 @@ import ch.uzh.ifi.hase.soprafs21.entity.User;
 import java.util.HashSet;
 import java.util.Set;
 
-public class MessageDTO implements EntityDTO {
+public class MessageDTO implements EntityDTO, Cloneable {
 
     private Long id;
     private Long timestamp;
@@ -67,12 +67,26 @@ public class MessageDTO implements EntityDTO {
     @Override
     public Set<Long> getChildren() {
         Set<Long> children = new HashSet<>();
-        children.add(senderId);
+        if (senderId != null) children.add(senderId);
         return children;
     }
 
+    @Override
+    public MessageDTO copy() {
+        try {
+            return (MessageDTO) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public void crop(Long receiverId, String cropHint) {
         // TODO message is unable to verify receiver
     }
+
+    @Override
+    public String cropClass(Long receiverId) {
+        return "public";
+    }
 }
@@ -1,23 +1,31 @@
 package ch.uzh.ifi.hase.soprafs21.rest.dto;
 
-import ch.uzh.ifi.hase.soprafs21.constant.GameState;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
-import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityJsonCache;
+import ch.uzh.ifi.hase.soprafs21.helpers.Observation;
 import ch.uzh.ifi.hase.soprafs21.repository.GameRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.GameSummaryRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.MessageChannelRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
-import ch.uzh.ifi.hase.soprafs21.service.GameService;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
 
 import java.util.*;
 
 public class SseUpdateDTO {
 
     private Long userId;
-    private List<Long> lobbies = new ArrayList<>();
     private Set<Long> idPool;
     private final Map<Long, EntityDTO> observedEntities = new HashMap<>();
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private final Map<Long, List<EntityPatchDTO>> patches = new HashMap<>();
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
 
 
 
@@ -38,35 +46,36 @@ public class SseUpdateDTO {
         return observedEntities;
     }
 
-    public List<Long> getLobbies() {
-        return lobbies;
-    }
-
-    private void collectRecursive(Long id) {
-        if (id == null || observedEntities.containsKey(id)) return;
-        EntityDTO dto = EntityDTO.find(id);
-        if (dto == null) return;
-        dto.crop(userId, null);
-        observedEntities.put(id, dto);
-        for (Long childId : dto.getChildren()) {
-            collectRecursive(childId);
-        }
+    public Map<Long, List<EntityPatchDTO>> getPatches() {
+        return patches;
     }
 
+    /**
+     * collects everything the user observes
+     */
     public void init() {
-        Collection<Game> runningGames = SpringContext.getBean(GameService.class).getRunningGames();
-        for (Game game : runningGames) {
-            if (game.getGameState() == GameState.LOBBY) lobbies.add(game.getGameId());
-        }
+        init(new Observation(userId), null);
+    }
 
+    /**
+     * collects the observed entities that changed or are newly observed
+     * @param observation what the receiver observed so far, updated
+     * @param dirtyIds ids of the entities that changed, null if anything might have
+     */
+    public void init(Observation observation, Set<Long> dirtyIds) {
+        // open lobbies are listed by the LobbyDirectory, clients observe the ones they look at
         idPool.add(userId);
-        idPool.addAll(lobbies); // automatically observe lobbies
-        for (Long id : idPool) {
-            collectRecursive(id);
-        }
+        observedEntities.putAll(observation.update(idPool, dirtyIds));
     }
 
-    public boolean filter(Map<Long, Long> clientVersion, Long now) {
+    /**
+     * drops the entities the client already holds in their current version.
+     * versions are unique and increasing (see VersionClock), so the client holds
+     * exactly the versions recorded, regardless of when they were sent.
+     * @param clientVersion entity id -> version the client holds, updated to the versions kept
+     * @return whether there is anything left to send
+     */
+    public boolean filter(Map<Long, Long> clientVersion) {
         assert(clientVersion != null);
         boolean updateFlag = false;
         Set<Long> idPool = new HashSet<>(observedEntities.keySet());
@@ -74,8 +83,8 @@ public class SseUpdateDTO {
         for (Long id : idPool) {
             Long lastReceived = clientVersion.get(id);
             Long lastModified = observedEntities.get(id).getLastModified();
-            if (lastReceived == null || lastReceived < lastModified) {
-                clientVersion.put(id, now);
+            if (lastReceived == null || lastModified == null || lastReceived < lastModified) {
+                if (lastModified != null) clientVersion.put(id, lastModified);
                 updateFlag = true;
             } else {
                 observedEntities.remove(id);
@@ -83,4 +92,41 @@ public class SseUpdateDTO {
         }
         return updateFlag;
     }
+
+    /**
+     * replaces every entity the client already holds by the patches leading to its new version.
+     * unchanged entities are dropped.
+     * @param sentEntities JSON of the entities the client holds, updated to the new versions
+     * @param entityJsonCache
+     * @return whether there is anything left to send
+     */
+    public boolean toDelta(Map<Long, JsonNode> sentEntities, EntityJsonCache entityJsonCache) {
+        for (Long id : new ArrayList<>(observedEntities.keySet())) {
+            JsonNode current = entityJsonCache.get(observedEntities.get(id), userId).getTree();
+            JsonNode previous = sentEntities.put(id, current);
+            if (previous == null) continue;
+            observedEntities.remove(id);
+            List<EntityPatchDTO> entityPatches = EntityPatchDTO.diff(previous, current);
+            if (!entityPatches.isEmpty()) patches.put(id, entityPatches);
+        }
+        return !observedEntities.isEmpty() || !patches.isEmpty();
+    }
+
+    /**
+     * converts this update to JSON. the entities are spliced in as serialized by the cache,
+     * only the patches are serialized for this receiver alone.
+     * @param entityJsonCache
+     * @return the JSON of the update
+     */
+    public ObjectNode toJson(EntityJsonCache entityJsonCache) {
+        ObjectNode update = objectMapper.createObjectNode();
+        update.put("userId", userId);
+        ObjectNode entities = update.putObject("observedEntities");
+        for (Map.Entry<Long, EntityDTO> entity : observedEntities.entrySet()) {
+            String json = entityJsonCache.get(entity.getValue(), userId).getJson();
+            entities.putRawValue(String.valueOf(entity.getKey()), new RawValue(json));
+        }
+        if (!patches.isEmpty()) update.set("patches", objectMapper.valueToTree(patches));
+        return update;
+    }
 }
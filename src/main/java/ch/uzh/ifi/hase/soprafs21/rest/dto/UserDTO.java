@@ -5,7 +5,7 @@ import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 
 import java.util.*;
 
-public class UserDTO implements EntityDTO {
+public class UserDTO implements EntityDTO, Cloneable {
 
     private Long id;
     private String username;
@@ -108,6 +108,15 @@ public class UserDTO implements EntityDTO {
         return children;
     }
 
+    @Override
+    public UserDTO copy() {
+        try {
+            return (UserDTO) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public void crop(Long receiverId, String cropHint) {
         if (!id.equals(receiverId)) {
@@ -115,4 +124,9 @@ public class UserDTO implements EntityDTO {
             incomingFriendRequests = null;
         }
     }
+
+    @Override
+    public String cropClass(Long receiverId) {
+        return id.equals(receiverId)? "self" : "public";
+    }
 }
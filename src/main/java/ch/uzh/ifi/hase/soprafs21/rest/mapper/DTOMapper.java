@@ -65,6 +65,8 @@ public interface DTOMapper {
     // posting messages
     @Mapping(target = "timestamp", expression = "java(null)")   // generated
     @Mapping(target = "senderId", expression = "java(null)")    // taken from request header
+    @Mapping(target = "messageChannelId", ignore = true)        // set by the channel
+    @Mapping(target = "sequenceNumber", ignore = true)          // assigned when posted
     @Mapping(source = "text", target = "text")
     Message convertMessagePostDTOtoEntity(MessagePostDTO messagePostDTO);
 
@@ -72,6 +74,7 @@ public interface DTOMapper {
 
     @Mapping(source = "userId", target = "userId")
     @Mapping(source = "observedEntities", target = "observedEntities")
+    @Mapping(target = "patches", ignore = true)                 // filled in per push
     SseUpdateDTO convertEntityToSseUpdateDTO(User user);
 
     // ENTITY_DTOS
@@ -148,8 +151,8 @@ public interface DTOMapper {
     @Mapping(source = "messageChannelId", target = "id")
 //    @Mapping(source = "confidential", target = "confidential") // unused feature
 //    @Mapping(source = "closed", target = "closed") // unused feature
-    @Mapping(source = "roles", target = "roles")
-    @Mapping(source = "messages", target = "messages")
+    @Mapping(source = "roleTags", target = "roles")
+    @Mapping(target = "messages", ignore = true)
     @Mapping(source = "associatedGameId", target = "associatedGameId")
     @Mapping(source = "lastModified", target = "lastModified")
     MessageChannelDTO convertEntityToMessageChannelDTO(MessageChannel entity);
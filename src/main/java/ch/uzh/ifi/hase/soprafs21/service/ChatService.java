@@ -1,20 +1,29 @@
 package ch.uzh.ifi.hase.soprafs21.service;
 
+import ch.uzh.ifi.hase.soprafs21.constant.ChatRole;
 import ch.uzh.ifi.hase.soprafs21.entity.Message;
 import ch.uzh.ifi.hase.soprafs21.entity.MessageChannel;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.helpers.MessageTokens;
+import ch.uzh.ifi.hase.soprafs21.helpers.UsernameCache;
+import ch.uzh.ifi.hase.soprafs21.helpers.VersionClock;
 import ch.uzh.ifi.hase.soprafs21.repository.MessageChannelRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.MessageRepository;
-import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.*;
+
 /**
  * chat Service
  * This class is the "worker" and responsible for all functionality related to chats
@@ -24,20 +33,25 @@ import org.springframework.web.server.ResponseStatusException;
 @Transactional
 public class ChatService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
     private final Logger log = LoggerFactory.getLogger(UserService.class);
 
     private final MessageChannelRepository messageChannelRepository;
     private final MessageRepository messageRepository;
-    private final UserRepository userRepository;
+    private final UsernameCache usernameCache;
+
+    private final Timer postTimer = Metrics.timer("chat.post");
 
     @Autowired
     public ChatService(@Qualifier("messageChannelRepository") MessageChannelRepository messageChannelRepository,
                        @Qualifier("messageRepository") MessageRepository messageRepository,
-                       @Qualifier("userRepository") UserRepository userRepository
+                       UsernameCache usernameCache
     ) {
         this.messageChannelRepository = messageChannelRepository;
         this.messageRepository = messageRepository;
-        this.userRepository = userRepository;
+        this.usernameCache = usernameCache;
     }
 
     /**
@@ -47,7 +61,7 @@ public class ChatService {
      */
     public MessageChannel createMessageChannel(Long userId) {
         MessageChannel messageChannel = messageChannelRepository.save(new MessageChannel());
-        messageChannel.addRole(userId, "@admin");
+        messageChannel.addRole(userId, ChatRole.ADMIN);
         messageChannelRepository.flush();
         return messageChannel;
     }
@@ -75,6 +89,31 @@ public class ChatService {
         return messageChannel;
     }
 
+    /**
+     * pages through the messages of a channel, served from the (messageChannelId, timestamp, messageId) index.
+     * without cursors, the latest messages are returned. clients page backwards with before,
+     * set to the oldest timestamp they hold, and catch up with since, set to the newest.
+     * timestamps are unique (see VersionClock), so no message is skipped or repeated.
+     * @param messageChannel
+     * @param since only messages posted after this timestamp, null for no bound
+     * @param before only messages posted before this timestamp, null for no bound
+     * @param limit maximal number of messages
+     * @return the messages next to since if only since is given, else the ones next to before. oldest first
+     */
+    @Transactional(readOnly = true)
+    public List<Message> getMessages(MessageChannel messageChannel, Long since, Long before, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("limit must be between 1 and %d", MAX_PAGE_SIZE));
+        Long messageChannelId = messageChannel.getMessageChannelId();
+        long lower = since == null? Long.MIN_VALUE : since;
+        long upper = before == null? Long.MAX_VALUE : before;
+        if (since != null && before == null)
+            return messageRepository.findOldest(messageChannelId, lower, upper, PageRequest.of(0, limit));
+        List<Message> messages = new ArrayList<>(messageRepository.findLatest(messageChannelId, lower, upper, PageRequest.of(0, limit)));
+        Collections.reverse(messages);
+        return messages;
+    }
+
 //    public MessageChannel verifyAdmin(Long messageChannelId, Long userId) {
 //        MessageChannel messageChannel = getMessageChannel(messageChannelId);
 //        if (!messageChannel.verifyAdmin(userId))
@@ -90,21 +129,63 @@ public class ChatService {
      * @return Message object successfully stored in the repository
      */
     public Message postMessage(Message message, User sender, MessageChannel messageChannel) {
-        message.setSenderId(sender.getUserId());
-        message.setTimestamp(System.currentTimeMillis());
-
-        for (String word : message.getText().split(" ")) {
-            if (word.startsWith("@")) {
-                String username = word.substring(1);
-                User user = userRepository.findByUsername(username);
-                if (user != null) message.setText(message.getText().replaceAll(word, "@#"+user.getUserId()));
-            }
+        Timer.Sample sample = Timer.start();
+        try {
+            return post(message, sender.getUserId(), messageChannel);
+        } finally {
+            sample.stop(postTimer);
         }
+    }
 
+    /**
+     * posts a message without sender, e.g. a reply of the game bot to a chat command.
+     * commands in it are not run, see MessageChannel.addMessage.
+     * always runs in a transaction of its own, so the lock on the channel is released right after,
+     * and it can be called once another transaction committed
+     * @param text
+     * @param messageChannel
+     * @return Message object successfully stored in the repository
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Message postBotMessage(String text, MessageChannel messageChannel) {
+        Message message = new Message();
+        message.setText(text);
+        Timer.Sample sample = Timer.start();
+        try {
+            return post(message, null, messageChannel);
+        } finally {
+            sample.stop(postTimer);
+        }
+    }
+
+    private Message post(Message message, Long senderId, MessageChannel messageChannel) {
+        message.setSenderId(senderId);
+
+        // mentions of usernames become mentions of user ids, all looked up at once
+        MessageTokens tokens = message.getTokens();
+        Set<String> usernames = new HashSet<>();
+        for (String mention : tokens.getMentions()) {
+            if (mention.length() > 1 && mention.charAt(1) != '#') usernames.add(mention.substring(1));
+        }
+        Map<String, Long> userIds = usernames.isEmpty()? Collections.emptyMap() : usernameCache.resolve(usernames);
+        if (!userIds.isEmpty()) {
+            message.setText(tokens.replaceMentions(mention -> {
+                Long userId = userIds.get(mention.substring(1));
+                return userId == null? mention : "@#" + userId;
+            }));
+        }
+
+        // appends to the same channel queue up here, so sequence numbers and timestamps follow the log
+        MessageChannel locked = messageChannelRepository.lockByMessageChannelId(messageChannel.getMessageChannelId());
+        if (locked != null) messageChannel = locked;
+        Long last = messageRepository.findLastSequenceNumber(messageChannel.getMessageChannelId());
+        message.setSequenceNumber(last == null? 1 : last + 1);
+        // unique, so it serves as pagination cursor
+        message.setTimestamp(VersionClock.next());
+        messageChannel.addMessage(message);
+        // a single insert into the chat log, the channel only gets a new version
         message = messageRepository.save(message);
         messageRepository.flush();
-        messageChannel.addMessage(message);
-        messageChannelRepository.flush();
         return message;
     }
 
@@ -0,0 +1,53 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.entity.Message;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * chat commands waiting to be applied, one queue per game.
+ * commands of a game are drained and applied in the order they were offered.
+ * queues are only modified within compute and taken as a whole, so they need no locking of their own.
+ */
+public class GameCommandQueue {
+
+    // game id -> pending commands, oldest first. never empty
+    private final Map<Long, Deque<Message>> pending = new ConcurrentHashMap<>();
+
+    public void offer(Long gameId, Message command) {
+        pending.compute(gameId, (id, commands) -> {
+            if (commands == null) commands = new ArrayDeque<>();
+            commands.addLast(command);
+            return commands;
+        });
+    }
+
+    /**
+     * takes the pending commands of some games
+     * @param gameIds
+     * @return game id -> commands, oldest first. games without commands are omitted
+     */
+    public Map<Long, List<Message>> drain(Collection<Long> gameIds) {
+        Map<Long, List<Message>> drained = new HashMap<>();
+        for (Long gameId : gameIds) {
+            Deque<Message> commands = pending.remove(gameId);
+            if (commands != null) drained.put(gameId, new ArrayList<>(commands));
+        }
+        return drained;
+    }
+
+    /**
+     * puts drained commands back in front of the ones offered since, e.g. after a failed tick
+     * @param drained game id -> commands, oldest first
+     */
+    public void restore(Map<Long, List<Message>> drained) {
+        for (Map.Entry<Long, List<Message>> entry : drained.entrySet()) {
+            pending.compute(entry.getKey(), (id, offered) -> {
+                Deque<Message> commands = new ArrayDeque<>(entry.getValue());
+                if (offered != null) commands.addAll(offered);
+                return commands;
+            });
+        }
+    }
+}
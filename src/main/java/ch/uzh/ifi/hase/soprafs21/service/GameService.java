@@ -10,9 +10,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.*;
@@ -36,7 +37,8 @@ public class GameService {
     private final GameRoundSummaryRepository gameRoundSummaryRepository;
     private final MessageChannelRepository messageChannelRepository;
     private final UserRepository userRepository;
-
+    private final GameStore gameStore;
+    private final ChatService chatService;
 
     @Autowired
     public GameService(
@@ -46,7 +48,9 @@ public class GameService {
             @Qualifier("gameRoundRepository") GameRoundRepository gameRoundRepository,
             @Qualifier("gameRoundSummaryRepository") GameRoundSummaryRepository gameRoundSummaryRepository,
             @Qualifier("messageChannelRepository") MessageChannelRepository messageChannelRepository,
-            @Qualifier("userRepository") UserRepository userRepository
+            @Qualifier("userRepository") UserRepository userRepository,
+            GameStore gameStore,
+            ChatService chatService
     ) {
         this.gameRepository = gameRepository;
         this.gameSettingsRepository = gameSettingsRepository;
@@ -55,33 +59,58 @@ public class GameService {
         this.gameRoundSummaryRepository = gameRoundSummaryRepository;
         this.messageChannelRepository = messageChannelRepository;
         this.userRepository = userRepository;
+        this.gameStore = gameStore;
+        this.chatService = chatService;
     }
 
     /**
-     * Loop running every 200ms to update lobby states
+     * applies the queued chat commands to the given games and updates them,
+     * e.g. advances the ones whose countdown ran out.
+     * called by the GameTickEngine with all games of a shard that are due.
+     * @param gameIds
+     * @param commands game id -> chat commands, oldest first
+     * @return the time each game needs to be updated next. games without a deadline are omitted
      */
-    @Scheduled(fixedRate=200)
-    public void updateLobbies(){
+    public Map<Long, Long> tickGames(Collection<Long> gameIds, Map<Long, List<Message>> commands) {
+        Map<Long, Long> deadlines = new HashMap<>();
         List<Game> deleteList = new ArrayList<>();
-        for (Game game : getRunningGames()) {
+        List<Game> games = gameStore.isEnabled()? gameStore.findAll(gameIds) : gameRepository.findAllById(gameIds);
+        Map<Long, User> referenced = findReferenced(games, commands);
+        for (Game game : games) {
+            List<Message> gameCommands = commands.get(game.getGameId());
+            if (gameCommands != null) {
+                for (Message command : gameCommands) runCommand(game, command, referenced);
+                storeChanges(game);
+            }
             switch(game.update()) {
-                case MODIFIED:      gameRoundRepository.flush();
-                                    break;
                 case DEAD:          deleteList.add(game);
                 case COMPLETE:      GameSummary summary = game.getGameSummary();
                                     if (summary == null) break;
                                     for (Long userId : summary.getScores().keySet()) {
                                         User user = userRepository.findByUserId(userId);
-                                        if (user != null) {
-                                            user.addToGameHistory(summary.getGameSummaryId());
-                                            userRepository.flush();
-                                        }
+                                        if (user != null) user.addToGameHistory(summary.getGameSummaryId());
                                     }
+                                    // the summary is referenced from now on
+                                    if (gameStore.isEnabled()) gameStore.save(game);
+                                    break;
+                case MODIFIED:      storeChanges(game);
                 default:            break;
             }
+            Long deadline = game.getNextDeadline();
+            if (deadline != null && !deleteList.contains(game)) deadlines.put(game.getGameId(), deadline);
+        }
+        if (gameStore.isEnabled()) {
+            for (Game game : deleteList) gameStore.remove(game);
         }
-        gameRepository.deleteAll(deleteList);
+        else gameRepository.deleteAll(deleteList);
         gameRepository.flush();
+        return deadlines;
+    }
+
+    public List<Long> getRunningGameIds() {
+        List<Long> gameIds = new ArrayList<>();
+        for (Game game : gameRepository.findAll()) gameIds.add(game.getGameId());
+        return gameIds;
     }
 
     public Collection<Game> getRunningGames() {
@@ -95,12 +124,108 @@ public class GameService {
      * @throws ResponseStatusException 404 if not found
      */
     public Game findRunningGame(Long gameId) {
-        Game game = gameRepository.findByGameId(gameId);
+        Game game = getGame(gameId);
         if (game == null)
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "game not found");
         return game;
     }
 
+    /**
+     * loads all users referenced by the commands of a batch at once
+     * @param games
+     * @param commands game id -> chat commands
+     * @return user id -> user
+     */
+    private Map<Long, User> findReferenced(List<Game> games, Map<Long, List<Message>> commands) {
+        Set<Long> userIds = new HashSet<>();
+        for (Game game : games) {
+            for (Message command : commands.getOrDefault(game.getGameId(), Collections.emptyList()))
+                userIds.addAll(game.getGameChat().getReferenced(command));
+        }
+        Map<Long, User> users = new HashMap<>();
+        if (userIds.isEmpty()) return users;
+        for (User user : userRepository.findAllById(userIds)) users.put(user.getUserId(), user);
+        return users;
+    }
+
+    /**
+     * runs a chat command in a game. commands not allowed to the sender or in the current state
+     * are rejected, and the sender is told why in the game chat
+     * @param game
+     * @param command
+     * @param users user id -> user, including the users referenced by the command
+     */
+    private void runCommand(Game game, Message command, Map<Long, User> users) {
+        Set<User> referenced = new HashSet<>();
+        for (Long userId : game.getGameChat().getReferenced(command)) {
+            User user = users.get(userId);
+            if (user != null) referenced.add(user);
+        }
+        try {
+            if (Game.GAME_MASTER_COMMANDS.contains(command.getCommand())
+                    && !game.getPlayerState(command.getSenderId()).isPromoted())
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "you are not the game master of this game");
+            game.runCommand(command, referenced);
+            if (command.getCommand().equals("/start") && game.getStartPending())
+                reply(game, command, "memes not ready, the game starts once they arrived");
+        } catch (ResponseStatusException e) {
+            reply(game, command, e.getReason());
+        } catch (IllegalStateException e) {
+            reply(game, command, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("command " + command.getCommand() + " failed in game " + game.getGameId(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * answers a chat command with a message of the game bot, mentioning the sender.
+     * within a transaction, the reply is posted once it committed, so the lock on the game chat
+     * is never held while games are ticked, and rolled back ticks don't reply
+     * @param game
+     * @param command
+     * @param text
+     */
+    private void reply(Game game, Message command, String text) {
+        log.debug("replied to command {} in game {}: {}", command.getCommand(), game.getGameId(), text);
+        String reply = String.format("@#%d %s: %s", command.getSenderId(), command.getCommand(), text);
+        MessageChannel gameChat = game.getGameChat();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            chatService.postBotMessage(reply, gameChat);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    chatService.postBotMessage(reply, gameChat);
+                } catch (RuntimeException e) {
+                    // the tick committed already, it must not fail because of its reply
+                    log.error("could not reply to command " + command.getCommand() + " in game " + game.getGameId(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * finds a game in the store if enabled, otherwise in the repository
+     * @param gameId
+     * @return the game, null if not found
+     */
+    private Game getGame(Long gameId) {
+        if (gameId == null) return null;
+        return gameStore.isEnabled()? gameStore.find(gameId) : gameRepository.findByGameId(gameId);
+    }
+
+    /**
+     * hands a modified game to the store.
+     * without store, games are managed entities and flushed with the transaction anyway.
+     * @param game
+     */
+    private void storeChanges(Game game) {
+        if (gameStore.isEnabled()) gameStore.update(game);
+    }
+
     /**
      * creates a new game
      * @param gameMaster
@@ -110,8 +235,11 @@ public class GameService {
     public Game createGame(User gameMaster, GameSettings gameSettings) {
 
         Long previousGameId = gameMaster.getCurrentGameId();
-        Game previousGame = previousGameId == null? null : gameRepository.findByGameId(previousGameId);
-        if (previousGame != null) previousGame.dismissPlayer(gameMaster);
+        Game previousGame = getGame(previousGameId);
+        if (previousGame != null) {
+            previousGame.dismissPlayer(gameMaster);
+            storeChanges(previousGame);
+        }
 
         Game game = new Game()
                 .adaptSettings(gameSettings)
@@ -156,6 +284,7 @@ public class GameService {
         Game game = verifyGameMaster(gameId, gameMaster.getUserId());
         try {
             game = game.adaptSettings(gameSettings);
+            storeChanges(game);
             gameSettingsRepository.flush();
         } catch(IllegalStateException e) {
             throw new ResponseStatusException(HttpStatus.GONE, "game is already running");
@@ -175,9 +304,13 @@ public class GameService {
             Game gameToJoin = findRunningGame(gameId);
             if (gameToJoin.getPlayerState(user.getUserId()).isEnrolled()) return gameToJoin;
             Long previousGameId = user.getCurrentGameId();
-            Game previousGame = previousGameId == null? null : gameRepository.findByGameId(previousGameId);
-            if (previousGame != null) previousGame.dismissPlayer(user);
+            Game previousGame = getGame(previousGameId);
+            if (previousGame != null) {
+                previousGame.dismissPlayer(user);
+                storeChanges(previousGame);
+            }
             gameToJoin.enrollPlayer(user, password);
+            storeChanges(gameToJoin);
             user.setCurrentGameId(gameId);
             gameRepository.flush();
             userRepository.flush();
@@ -202,6 +335,7 @@ public class GameService {
     public void leaveGame(Long gameId, User user) {
         Game game = findRunningGame(gameId);
         game.dismissPlayer(user);
+        storeChanges(game);
         user.setCurrentGameId(null);
     }
 
@@ -232,17 +366,24 @@ public class GameService {
     }
 
     /**
-     * starts a game
+     * starts a game.
+     * a forced start lacking memes is kept pending and happens once they arrived,
+     * the caller is told with a SERVICE_UNAVAILABLE, which doesn't roll back the pending start.
      * @param gameId
      * @param userId game master
      */
+    @Transactional(noRollbackFor = ResponseStatusException.class)
     public void startGame(Long gameId, Long userId, boolean force) {
         Game game = verifyGameMaster(gameId, userId);
+        boolean closed;
         try {
-            game.closeLobby(force);
+            closed = game.closeLobby(force);
+            storeChanges(game);
         } catch(IllegalStateException e) {
             throw new ResponseStatusException(HttpStatus.GONE, "game is already running");
         }
+        if (!closed && game.getStartPending())
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "memes not ready, the game starts once they arrived");
     }
 
     /**
@@ -254,6 +395,7 @@ public class GameService {
     public void setPlayerReady(Long gameId, User user, boolean ready) {
         Game game = verifyPlayer(gameId, user);
         game.setPlayerReady(user.getUserId(), ready);
+        storeChanges(game);
     }
 
     /**
@@ -266,6 +408,7 @@ public class GameService {
         Game game = verifyPlayer(gameId, user);
         try {
             game.putSuggestion(user.getUserId(), suggestion);
+            storeChanges(game);
             gameRoundRepository.flush();
         } catch(SecurityException e) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "you are not enrolled for this game");
@@ -284,6 +427,7 @@ public class GameService {
         Game game = verifyPlayer(gameId, user);
         try {
             game.putVote(user.getUserId(), vote);
+            storeChanges(game);
             gameRoundRepository.flush();
         } catch(SecurityException e) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "you are not enrolled for this game");
@@ -302,23 +446,30 @@ public class GameService {
         User user = userRepository.findByUserId(userId);
         try {
             game.banPlayer(user);
+            storeChanges(game);
             gameRepository.flush();
         } catch(IllegalArgumentException e) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, e.getMessage());
         }
     }
 
+    /**
+     * draws a random serial for a new game.
+     * the game's rounds and summaries share the serial, so it must not be in use by a game
+     * nor by the summary of a game that already ended.
+     * @return id of type GAME
+     */
     public Long randomGameId() {
-        long randomId;
+        Long gameId;
         do {
-            randomId = random.nextLong() & 0xFFFFFFFFC0L;
-        } while (!availableGameId(randomId));
-        return randomId;
+            long serial = random.nextInt(Integer.MAX_VALUE) +1L;
+            gameId = EntityType.GAME.id(serial, 0);
+        } while (!availableGameId(gameId));
+        return gameId;
     }
 
-    private boolean availableGameId(Long id) {
-        if (id < 0xFFFFFFFL) return false;
-        for (int i = 0; i < 64; i++) if (EntityType.get(id) != EntityType.UNKNOWN) return false;
-        return true;
+    private boolean availableGameId(Long gameId) {
+        Long gameSummaryId = EntityType.GAME_SUMMARY.id(EntityType.serialOf(gameId), 0);
+        return !gameRepository.existsById(gameId) && !gameSummaryRepository.existsById(gameSummaryId);
     }
 }
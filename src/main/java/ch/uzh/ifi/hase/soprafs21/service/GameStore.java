@@ -0,0 +1,275 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
+import ch.uzh.ifi.hase.soprafs21.constant.GameState;
+import ch.uzh.ifi.hase.soprafs21.entity.Game;
+import ch.uzh.ifi.hase.soprafs21.entity.GameRound;
+import ch.uzh.ifi.hase.soprafs21.entity.GameSummary;
+import ch.uzh.ifi.hase.soprafs21.entity.MessageChannel;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeEvent;
+import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.EntityDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Game Store
+ * holds the live games in memory as the source of truth, if enabled (game.store.enabled).
+ * Games are loaded from the database on first access, detached from any session,
+ * and only ever modified while holding their monitor.
+ * Changes are written back in two ways:
+ * - write-through: changes of a game's boundary (state, round, round phase, players, settings)
+ *   are merged right away, in the transaction of the caller.
+ * - write-behind: everything else (ready flags, suggestions, votes, ...) is merged periodically
+ *   in one batch transaction.
+ * A game only counts as written once the transaction commits. If it's rolled back,
+ * the game is marked for the next flush again.
+ * After a crash, games are recovered from the database, so at most the changes of the last
+ * flush interval within the current phase are lost.
+ */
+@Service
+public class GameStore {
+
+    private final Logger log = LoggerFactory.getLogger(GameStore.class);
+
+    private final boolean enabled;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate loadTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final Map<Long, Game> games = new ConcurrentHashMap<>();
+    // game id -> boundary of the game as last written to the database
+    private final Map<Long, List<Object>> persistedBoundaries = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyIds = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public GameStore(
+            PlatformTransactionManager transactionManager,
+            @Value("${game.store.enabled:false}") boolean enabled
+    ) {
+        this.enabled = enabled;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // games are loaded in a session of their own, so they end up detached
+        this.loadTemplate = new TransactionTemplate(transactionManager);
+        this.loadTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.loadTemplate.setReadOnly(true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * finds a live game, loading it from the database if it isn't in memory yet.
+     * @param gameId
+     * @return the live instance, null if there is no such game
+     */
+    public Game find(Long gameId) {
+        if (gameId == null) return null;
+        Game game = games.get(gameId);
+        if (game != null) return game;
+        game = loadTemplate.execute(status -> load(gameId));
+        if (game == null) return null;
+        // another thread might have loaded it in the meantime, its instance wins
+        Game previous = games.putIfAbsent(gameId, game);
+        if (previous != null) return previous;
+        persistedBoundaries.put(gameId, boundaryOf(game));
+        return game;
+    }
+
+    /**
+     * finds multiple live games, skipping the ones that don't exist
+     * @param gameIds
+     * @return the live instances
+     */
+    public List<Game> findAll(Collection<Long> gameIds) {
+        List<Game> found = new ArrayList<>();
+        for (Long gameId : gameIds) {
+            Game game = find(gameId);
+            if (game != null) found.add(game);
+        }
+        return found;
+    }
+
+    private Game load(Long gameId) {
+        Game game = entityManager.find(Game.class, gameId);
+        if (game == null) return null;
+        // initialize everything that is accessed once the game is detached
+        Hibernate.initialize(game.getPlayerStates());
+        Hibernate.initialize(game.getScores());
+        Hibernate.initialize(game.getGameChat().getRoles());
+        // the getter would go and search memes if there are none
+        entityManager.createQuery("select s from GameSettings s left join fetch s.memesFound where s.gameSettingsId = :id")
+                .setParameter("id", game.getGameSettings().getGameSettingsId())
+                .getResultList();
+        for (GameRound round : game.getGameRounds()) {
+            Hibernate.initialize(round.getSuggestions());
+            Hibernate.initialize(round.getVotes());
+            Hibernate.initialize(round.getScores());
+        }
+        GameSummary summary = game.getGameSummary();
+        if (summary != null) {
+            Hibernate.initialize(summary.getScores());
+            Hibernate.initialize(summary.getRoundIds());
+        }
+        return game;
+    }
+
+    /**
+     * to be called after a live game was modified.
+     * writes the game through if its boundary changed, otherwise marks it for the next flush
+     * and notifies the subscribers directly, since there is no database write to do so.
+     * @param game
+     */
+    public void update(Game game) {
+        Long gameId = game.getGameId();
+        if (!boundaryOf(game).equals(persistedBoundaries.get(gameId))) {
+            save(game);
+            return;
+        }
+        dirtyIds.add(gameId);
+        GameRound round;
+        boolean lobby;
+        synchronized (game) {
+            round = game.getCurrentRound();
+            lobby = game.getGameState() == GameState.LOBBY;
+        }
+        SpringContext.publishEvent(new EntityChangeEvent(gameId, lobby));
+        if (round != null) SpringContext.publishEvent(new EntityChangeEvent(round.getGameRoundId()));
+    }
+
+    /**
+     * writes a live game to the database within the current transaction, or a new one if there is none
+     * @param game
+     */
+    public void save(Game game) {
+        transactionTemplate.executeWithoutResult(status -> merge(game));
+    }
+
+    /**
+     * removes a game from the store and the database
+     * @param game
+     */
+    public void remove(Game game) {
+        Long gameId = game.getGameId();
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.remove(merge(game));
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    games.remove(gameId);
+                    dirtyIds.remove(gameId);
+                    persistedBoundaries.remove(gameId);
+                }
+            });
+        });
+    }
+
+    /**
+     * writes all games modified since the last flush in a single transaction
+     */
+    @Scheduled(fixedDelayString = "${game.store.flush-interval:1000}")
+    public void flush() {
+        if (dirtyIds.isEmpty()) return;
+        List<Game> batch = new ArrayList<>();
+        for (Iterator<Long> it = dirtyIds.iterator(); it.hasNext();) {
+            Game game = games.get(it.next());
+            it.remove();
+            if (game != null) batch.add(game);
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Game game : batch) merge(game);
+            });
+        } catch (RuntimeException e) {
+            log.error("could not flush games, retrying with the next flush", e);
+            for (Game game : batch) dirtyIds.add(game.getGameId());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * merges a live game within the current transaction.
+     * its boundary is recorded once the transaction committed, on rollback it's marked dirty again.
+     * @param game
+     * @return the managed instance
+     */
+    private Game merge(Game game) {
+        Long gameId = game.getGameId();
+        Game managed;
+        List<Object> boundary;
+        synchronized (game) {
+            // settings and chat aren't cascaded, merge would only resolve the references
+            entityManager.merge(game.getGameSettings());
+            MessageChannel chat = entityManager.find(MessageChannel.class, game.getGameChat().getMessageChannelId());
+            if (chat != null) chat.adoptRoles(game.getGameChat().getRoles());
+            managed = entityManager.merge(game);
+            boundary = boundaryOf(game);
+            // changes made from here on mark the game again
+            dirtyIds.remove(gameId);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) persistedBoundaries.put(gameId, boundary);
+                else dirtyIds.add(gameId);
+            }
+        });
+        return managed;
+    }
+
+    /**
+     * the properties of a game whose change must be persisted right away
+     * @param game
+     * @return a value comparable by equals
+     */
+    private static List<Object> boundaryOf(Game game) {
+        synchronized (game) {
+            return Arrays.asList(
+                    game.getGameState(),
+                    game.getRoundCounter(),
+                    game.getCurrentRoundPhase(),
+                    game.getGameChat().getLastModified(),
+                    game.getGameSettings().getLastModified());
+        }
+    }
+
+    /**
+     * converts a live game or one of its rounds to a DTO
+     * @param id of type GAME or GAME_ROUND
+     * @return the DTO, null if there is no such entity
+     */
+    public EntityDTO findDTO(Long id) {
+        Game game = find(EntityType.GAME.id(EntityType.serialOf(id), 0));
+        if (game == null) return null;
+        synchronized (game) {
+            if (EntityType.get(id) == EntityType.GAME) return DTOMapper.INSTANCE.convertEntityToGameDTO(game);
+            for (GameRound round : game.getGameRounds())
+                if (id.equals(round.getGameRoundId())) return DTOMapper.INSTANCE.convertEntityToGameRoundDTO(round);
+            return null;
+        }
+    }
+}
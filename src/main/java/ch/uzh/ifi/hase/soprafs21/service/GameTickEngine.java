@@ -0,0 +1,281 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
+import ch.uzh.ifi.hase.soprafs21.entity.Message;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeEvent;
+import ch.uzh.ifi.hase.soprafs21.helpers.QueryCounter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Game Tick Engine
+ * updates games when they are due instead of polling all of them.
+ * Games are distributed over a configurable number of shards, each running its own thread
+ * with a queue of deadlines. A game is only ticked when its deadline (its advanceTargetTime)
+ * expired or when it changed, e.g. a lobby is only checked when a player's state changed.
+ * All games of a shard that are due are ticked in one transaction,
+ * so a slow game only delays the games of its own shard.
+ * Chat commands are queued per game and applied in order by the shard of the game,
+ * right before its tick, so posting never waits for game logic.
+ * If a batch fails, its games are ticked one by one, so only the failing game is retried,
+ * with back-off and at most max-attempts times. Its commands are dropped once it's given up.
+ * Metrics: game.tick (duration), game.tick.games (batch size), game.tick.queries (SQL statements),
+ * game.tick.lag (time from deadline to tick), game.tick.overruns and game.tick.failures.
+ */
+@Service
+public class GameTickEngine {
+
+    private final Logger log = LoggerFactory.getLogger(GameTickEngine.class);
+
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    private final GameService gameService;
+    private final int maxBatchSize;
+    private final long overrunThreshold;
+    private final long retryDelay;
+    private final int maxAttempts;
+    private final Shard[] shards;
+
+    private final Timer tickTimer = Metrics.timer("game.tick");
+    private final Timer lagTimer = Metrics.timer("game.tick.lag");
+    private final DistributionSummary batchSizes = Metrics.summary("game.tick.games");
+    private final DistributionSummary queryCounts = Metrics.summary("game.tick.queries");
+    private final Counter overruns = Metrics.counter("game.tick.overruns");
+    private final Counter failures = Metrics.counter("game.tick.failures");
+
+    // game id -> earliest pending deadline. queue entries not matching it are outdated.
+    private final Map<Long, Long> deadlines = new ConcurrentHashMap<>();
+    private final GameCommandQueue commands = new GameCommandQueue();
+    // game id -> failed ticks in a row
+    private final Map<Long, Integer> attempts = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GameTickEngine(
+            GameService gameService,
+            @Value("${game.tick.shards:4}") int shardCount,
+            @Value("${game.tick.max-batch-size:256}") int maxBatchSize,
+            @Value("${game.tick.overrun-threshold-millis:200}") long overrunThreshold,
+            @Value("${game.tick.retry-delay-millis:1000}") long retryDelay,
+            @Value("${game.tick.max-attempts:5}") int maxAttempts
+    ) {
+        this.gameService = gameService;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.overrunThreshold = overrunThreshold;
+        this.retryDelay = Math.max(1, retryDelay);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.shards = new Shard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) shards[i] = new Shard(i);
+    }
+
+    /**
+     * starts the shards and schedules all games found in the repository
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (Shard shard : shards) shard.start();
+        for (Long gameId : gameService.getRunningGameIds()) touch(gameId);
+        log.info("game tick engine started with {} shards", shards.length);
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (Shard shard : shards) shard.interrupt();
+    }
+
+    /**
+     * changed games are ticked right away, e.g. to react to commands
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntityChange(EntityChangeEvent event) {
+        if (EntityType.get(event.getEntityId()) == EntityType.GAME) touch(event.getEntityId());
+    }
+
+    /**
+     * schedules a game to be ticked as soon as possible
+     * @param gameId
+     */
+    public void touch(Long gameId) {
+        schedule(gameId, System.currentTimeMillis());
+    }
+
+    /**
+     * queues a chat command for a game, once the transaction posting it committed
+     * @param gameId
+     * @param command
+     */
+    public void submitCommand(Long gameId, Message command) {
+        if (gameId == null) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            commands.offer(gameId, command);
+            touch(gameId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                commands.offer(gameId, command);
+                touch(gameId);
+            }
+        });
+    }
+
+    /**
+     * schedules a game to be ticked at a given time.
+     * only the earliest deadline of a game is kept, since every tick determines the next one anyway.
+     * @param gameId
+     * @param time in epoch millis
+     */
+    public void schedule(Long gameId, long time) {
+        if (gameId == null) return;
+        Long deadline = deadlines.merge(gameId, time, Math::min);
+        if (deadline == time) shardOf(gameId).queue.add(new Deadline(gameId, time));
+    }
+
+    private Shard shardOf(Long gameId) {
+        return shards[Math.floorMod(Long.hashCode(EntityType.serialOf(gameId)), shards.length)];
+    }
+
+    /**
+     * @param gameIds
+     * @param due earliest deadline of the batch
+     */
+    private void tick(Set<Long> gameIds, long due) {
+        long lag = Math.max(0, System.currentTimeMillis() - due);
+        lagTimer.record(lag, TimeUnit.MILLISECONDS);
+        if (lag > overrunThreshold) overruns.increment();
+        batchSizes.record(gameIds.size());
+
+        Map<Long, List<Message>> drained = commands.drain(gameIds);
+        try {
+            tickGames(gameIds, drained);
+            return;
+        } catch (RuntimeException e) {
+            if (gameIds.size() == 1) {
+                retry(gameIds.iterator().next(), drained, e);
+                return;
+            }
+            log.warn("could not tick games {}, ticking them one by one", gameIds);
+        }
+        // isolates the failing games, the others are ticked right away
+        for (Long gameId : gameIds) {
+            List<Message> own = drained.get(gameId);
+            Map<Long, List<Message>> ownCommands = own == null? Map.of() : Map.of(gameId, own);
+            try {
+                tickGames(Set.of(gameId), ownCommands);
+            } catch (RuntimeException e) {
+                retry(gameId, ownCommands, e);
+            }
+        }
+    }
+
+    private void tickGames(Set<Long> gameIds, Map<Long, List<Message>> drained) {
+        Map<Long, Long> next;
+        long queries = QueryCounter.get();
+        Timer.Sample sample = Timer.start();
+        try {
+            next = gameService.tickGames(gameIds, drained);
+        } finally {
+            sample.stop(tickTimer);
+            queryCounts.record(QueryCounter.get() - queries);
+        }
+        if (!attempts.isEmpty()) for (Long gameId : gameIds) attempts.remove(gameId);
+        for (Map.Entry<Long, Long> entry : next.entrySet()) schedule(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * schedules a game that failed to tick again, doubling the delay with every attempt.
+     * after max-attempts the game is given up and its commands are dropped,
+     * it's only ticked again once it changes.
+     * @param gameId
+     * @param drained commands of the failed tick
+     * @param e
+     */
+    private void retry(Long gameId, Map<Long, List<Message>> drained, RuntimeException e) {
+        failures.increment();
+        int attempt = attempts.merge(gameId, 1, Integer::sum);
+        if (attempt >= maxAttempts) {
+            attempts.remove(gameId);
+            int dropped = drained.containsKey(gameId)? drained.get(gameId).size() : 0;
+            log.error("giving up on game " + gameId + " after " + attempt + " failed ticks, dropping " + dropped + " commands", e);
+            return;
+        }
+        long delay = retryDelay << Math.min(attempt - 1, MAX_BACKOFF_SHIFT);
+        log.warn("could not tick game {} (attempt {} of {}), retrying in {} ms: {}", gameId, attempt, maxAttempts, delay, e.toString());
+        commands.restore(drained);
+        schedule(gameId, System.currentTimeMillis() + delay);
+    }
+
+    private static class Deadline implements Delayed {
+
+        private final Long gameId;
+        private final long time;
+
+        private Deadline(Long gameId, long time) {
+            this.gameId = gameId;
+            this.time = time;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(time, ((Deadline) other).time);
+        }
+    }
+
+    private class Shard extends Thread {
+
+        private final DelayQueue<Deadline> queue = new DelayQueue<>();
+
+        private Shard(int index) {
+            super("game-tick-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                try {
+                    Set<Long> batch = new LinkedHashSet<>();
+                    Deadline first = queue.take();
+                    collect(first, batch);
+                    Deadline deadline;
+                    while (batch.size() < maxBatchSize && (deadline = queue.poll()) != null) collect(deadline, batch);
+                    if (!batch.isEmpty()) tick(batch, first.time);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("unexpected error in " + getName(), e);
+                }
+            }
+        }
+
+        private void collect(Deadline deadline, Set<Long> batch) {
+            // outdated entries are skipped, the pending deadline has its own entry
+            if (deadlines.remove(deadline.gameId, deadline.time)) batch.add(deadline.gameId);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.GameState;
+import ch.uzh.ifi.hase.soprafs21.entity.Game;
+import ch.uzh.ifi.hase.soprafs21.repository.GameRepository;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.EntityDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.GameDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.GameSettingsDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.LobbyDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Lobby Directory
+ * lists the open lobbies without touching the games that aren't.
+ * The UpdateDispatcher reports every game entering or leaving the lobby state and every
+ * changed entity, so only the lobbies concerned are rebuilt from the cached DTOs.
+ * Whenever the listing changed, the first push-limit lobbies are serialized once
+ * and pushed to every subscriber as a shared "Lobbies" event. Clients page through the rest
+ * with GET /lobbies.
+ */
+@Service
+@Transactional(readOnly = true)
+public class LobbyDirectory {
+
+    private final Logger log = LoggerFactory.getLogger(LobbyDirectory.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final GameRepository gameRepository;
+    private final SseConnectionRegistry connections;
+    private final SseWriter sseWriter;
+    private final int pushLimit;
+
+    // game id -> lobby, ordered by id and thus by creation
+    private final Map<Long, LobbyDTO> lobbies = new ConcurrentSkipListMap<>();
+    // settings id -> game id, as settings change separately
+    private final Map<Long, Long> settingsOwners = new ConcurrentHashMap<>();
+    private volatile String payload;
+
+    @Autowired
+    public LobbyDirectory(
+            @Qualifier("gameRepository") GameRepository gameRepository,
+            SseConnectionRegistry connections,
+            SseWriter sseWriter,
+            @Value("${lobby.directory.push-limit:100}") int pushLimit
+    ) {
+        this.gameRepository = gameRepository;
+        this.connections = connections;
+        this.sseWriter = sseWriter;
+        this.pushLimit = pushLimit;
+        this.payload = serialize();
+    }
+
+    /**
+     * picks up the lobbies left open by a previous run
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        Map<Long, Boolean> found = new HashMap<>();
+        for (Game game : gameRepository.findAllByGameState(GameState.LOBBY)) found.put(game.getGameId(), true);
+        refresh(Collections.emptySet(), found);
+    }
+
+    /**
+     * rebuilds the lobbies concerned by a batch of changes and pushes the listing if it changed
+     * @param dirtyIds ids of all changed entities
+     * @param lobbyFlags game id -> whether the game is an open lobby after its latest change
+     */
+    public void refresh(Set<Long> dirtyIds, Map<Long, Boolean> lobbyFlags) {
+        boolean changed = false;
+        for (Map.Entry<Long, Boolean> flag : lobbyFlags.entrySet()) {
+            changed |= flag.getValue()? put(flag.getKey()) : remove(flag.getKey());
+        }
+        for (Long id : dirtyIds) {
+            Long gameId = settingsOwners.get(id);
+            if (gameId != null && !lobbyFlags.containsKey(gameId)) changed |= put(gameId);
+        }
+        if (!changed) return;
+        payload = serialize();
+        for (SseConnection connection : connections.getConnections()) sendTo(connection);
+    }
+
+    private boolean put(Long gameId) {
+        EntityDTO game = EntityDTO.find(gameId);
+        if (!(game instanceof GameDTO) || ((GameDTO) game).getGameState() != GameState.LOBBY) return remove(gameId);
+        EntityDTO settings = EntityDTO.find(((GameDTO) game).getGameSettingsId());
+        if (!(settings instanceof GameSettingsDTO)) return remove(gameId);
+        LobbyDTO lobby = LobbyDTO.of((GameDTO) game, (GameSettingsDTO) settings);
+        LobbyDTO previous = lobbies.put(gameId, lobby);
+        settingsOwners.put(lobby.getGameSettingsId(), gameId);
+        if (previous != null && !previous.getGameSettingsId().equals(lobby.getGameSettingsId()))
+            settingsOwners.remove(previous.getGameSettingsId());
+        // most changes of a lobby, e.g. players getting ready, don't show in the listing
+        return !lobby.equals(previous);
+    }
+
+    private boolean remove(Long gameId) {
+        LobbyDTO previous = lobbies.remove(gameId);
+        if (previous == null) return false;
+        settingsOwners.remove(previous.getGameSettingsId());
+        return true;
+    }
+
+    /**
+     * queues the current listing for a subscriber
+     * @param connection
+     */
+    public void sendTo(SseConnection connection) {
+        sseWriter.sendShared(connection, "Lobbies", payload);
+    }
+
+    private String serialize() {
+        ObjectNode listing = objectMapper.createObjectNode();
+        listing.put("total", lobbies.size());
+        listing.set("lobbies", objectMapper.valueToTree(find(null, null, 0, 0, pushLimit)));
+        try {
+            return objectMapper.writeValueAsString(listing);
+        } catch (JsonProcessingException e) {
+            log.error("could not serialize the lobby listing", e);
+            return "{}";
+        }
+    }
+
+    /**
+     * @param name part of the lobby name, ignoring case. null for any
+     * @param subreddit subreddit, ignoring case. null for any
+     * @param minFreeSlots minimal number of free slots
+     * @param page zero-based page
+     * @param size lobbies per page
+     * @return the lobbies on the requested page, oldest first
+     */
+    public List<LobbyDTO> find(String name, String subreddit, int minFreeSlots, int page, int size) {
+        String namePart = name == null? null : name.toLowerCase(Locale.ROOT);
+        List<LobbyDTO> found = new ArrayList<>();
+        long skip = (long) Math.max(0, page) * size;
+        for (LobbyDTO lobby : lobbies.values()) {
+            if (found.size() >= size) break;
+            if (namePart != null && (lobby.getName() == null || !lobby.getName().toLowerCase(Locale.ROOT).contains(namePart))) continue;
+            if (subreddit != null && !subreddit.equalsIgnoreCase(lobby.getSubreddit())) continue;
+            if (lobby.getFreeSlots() < minFreeSlots) continue;
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            found.add(lobby);
+        }
+        return found;
+    }
+
+    /**
+     * @return ids of all open lobbies
+     */
+    public Set<Long> getLobbyIds() {
+        return Collections.unmodifiableSet(lobbies.keySet());
+    }
+}
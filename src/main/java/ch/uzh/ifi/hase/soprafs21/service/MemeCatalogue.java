@@ -0,0 +1,165 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeEvent;
+import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import util.FileMemeSource;
+import util.MemeSource;
+import util.RedditMemeSource;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meme Catalogue
+ * caches the memes found per subreddit and meme type, so games never wait for reddit.
+ * Memes are fetched in the background, concurrent requests for the same subreddit and meme type
+ * share one fetch, and entries are refreshed in the background once they get old.
+ * Callers peek at the memes and are notified once they arrived if they weren't there yet.
+ * The source is configurable (meme.source): "reddit", or "file" to run offline.
+ * Fetches are timed as memes.fetch, tagged by source and outcome.
+ */
+@Service
+public class MemeCatalogue {
+
+    private final Logger log = LoggerFactory.getLogger(MemeCatalogue.class);
+
+    private final ExecutorService executorService;
+    private final AsyncLoadingCache<Key, List<String>> cache;
+
+    // ids of the entities to notify once the memes of a key arrived
+    private final Map<Key, Set<Long>> waiting = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MemeCatalogue(
+            @Value("${meme.source:reddit}") String source,
+            @Value("${meme.source.file:classpath:memes.txt}") Resource file,
+            @Value("${meme.source.timeout-millis:5000}") int timeoutMillis,
+            @Value("${meme.catalogue.maximum-size:256}") long maximumSize,
+            @Value("${meme.catalogue.expire-after-write-seconds:3600}") long expireAfterWriteSeconds,
+            @Value("${meme.catalogue.refresh-after-write-seconds:600}") long refreshAfterWriteSeconds,
+            @Value("${meme.catalogue.fetch-threads:4}") int fetchThreads
+    ) {
+        this(createSource(source, file, timeoutMillis), maximumSize, expireAfterWriteSeconds, refreshAfterWriteSeconds, fetchThreads);
+    }
+
+    public MemeCatalogue(MemeSource memeSource, long maximumSize, long expireAfterWriteSeconds,
+                         long refreshAfterWriteSeconds, int fetchThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, fetchThreads), runnable -> {
+            Thread thread = new Thread(runnable, "meme-fetch-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .refreshAfterWrite(refreshAfterWriteSeconds, TimeUnit.SECONDS)
+                .executor(memeSource.isLocal()? Runnable::run : executorService)
+                .buildAsync(key -> fetch(memeSource, key));
+    }
+
+    private static List<String> fetch(MemeSource memeSource, Key key) {
+        String outcome = "success";
+        Timer.Sample sample = Timer.start();
+        try {
+            return memeSource.fetch(key.subreddit, key.memeType);
+        } catch (RuntimeException e) {
+            outcome = "failure";
+            throw e;
+        } finally {
+            sample.stop(Metrics.timer("memes.fetch",
+                    "source", memeSource.getClass().getSimpleName(), "outcome", outcome));
+        }
+    }
+
+    private static MemeSource createSource(String source, Resource file, int timeoutMillis) {
+        switch (source) {
+            case "reddit":  return new RedditMemeSource(timeoutMillis);
+            case "file":    return new FileMemeSource(file);
+            default:        throw new IllegalArgumentException("unknown meme source: " + source);
+        }
+    }
+
+    /**
+     * starts fetching the memes of a subreddit and meme type unless they are cached already
+     * @param subreddit
+     * @param memeType
+     */
+    public void prefetch(String subreddit, MemeType memeType) {
+        if (subreddit == null || memeType == null) return;
+        cache.get(new Key(subreddit, memeType));
+    }
+
+    /**
+     * looks up the memes of a subreddit and meme type without waiting for them.
+     * if they aren't available yet, they are fetched and the given entity is marked as changed
+     * once they arrived, so whoever updates it can peek again.
+     * @param subreddit
+     * @param memeType
+     * @param notifyId id of the entity to notify, may be null
+     * @return the memes, null if they aren't available yet
+     */
+    public List<String> peek(String subreddit, MemeType memeType, Long notifyId) {
+        if (subreddit == null || memeType == null) return null;
+        Key key = new Key(subreddit, memeType);
+        CompletableFuture<List<String>> memes = cache.get(key);
+        if (memes.isDone() && !memes.isCompletedExceptionally()) return memes.join();
+        if (notifyId != null && waiting.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(notifyId))
+            memes.whenComplete((found, e) -> notifyWaiting(key, e));
+        return null;
+    }
+
+    private void notifyWaiting(Key key, Throwable e) {
+        Set<Long> ids = waiting.remove(key);
+        if (ids == null) return;
+        // failed fetches are retried with the next peek, notifying would just provoke that right away
+        if (e != null) {
+            log.warn("could not fetch memes of r/{} ({}): {}", key.subreddit, key.memeType, e.toString());
+            return;
+        }
+        for (Long id : ids) SpringContext.publishEvent(new EntityChangeEvent(id));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    private static class Key {
+
+        private final String subreddit;
+        private final MemeType memeType;
+
+        private Key(String subreddit, MemeType memeType) {
+            // subreddit names are case insensitive
+            this.subreddit = subreddit.toLowerCase(Locale.ROOT);
+            this.memeType = memeType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return subreddit.equals(other.subreddit) && memeType == other.memeType;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(subreddit, memeType);
+        }
+    }
+}
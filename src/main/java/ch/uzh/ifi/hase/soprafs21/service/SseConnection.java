@@ -0,0 +1,187 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.helpers.Observation;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.*;
+
+/**
+ * state of a single SSE connection:
+ * the emitter, the format negotiated by the client and what it has received so far.
+ * Update events are numbered per stream, their ids ("streamId:number") are sent along,
+ * so a reconnecting client can resume the stream with the Last-Event-ID it received.
+ * only accessed by the thread pushing updates, except for lastSent
+ * and the outbound queue, which is guarded by its own lock and drained by the SseWriter.
+ */
+public class SseConnection {
+
+    private final Long userId;
+    private final SseEmitter emitter;
+    private final boolean delta;
+    // identifies the stream across reconnects
+    private final String streamId;
+    // number of the latest Update event
+    private long eventNumber;
+
+    // entity id -> lastModified of the version the client received
+    private final Map<Long, Long> clientVersion = new HashMap<>();
+    // entity id -> number of the event that carried the version in clientVersion
+    private final Map<Long, Long> sentIn = new HashMap<>();
+    // the connection this one resumes, and the number of the latest event received from it
+    private SseConnection resumed;
+    private long resumedNumber;
+    // entity id -> JSON of the cropped DTO the client received, delta mode only
+    private final Map<Long, JsonNode> sentEntities = new HashMap<>();
+    // entities observed as of the last update, used to decide whom a change concerns
+    private final Observation observation;
+    // time anything was last sent, heartbeats are only needed for idle connections
+    private volatile long lastSent = System.currentTimeMillis();
+    // events waiting for a writer, and whether one is draining them
+    private final Deque<SseWriter.Outbound> outbound = new ArrayDeque<>();
+    private boolean writing;
+    private boolean closed;
+
+    public SseConnection(Long userId, SseEmitter emitter, boolean delta) {
+        this(userId, emitter, delta, new Observation(userId));
+    }
+
+    SseConnection(Long userId, SseEmitter emitter, boolean delta, Observation observation) {
+        this(userId, emitter, delta, observation, UUID.randomUUID().toString());
+    }
+
+    /**
+     * continues the stream of a previous connection
+     * @param resumed previous connection of the same user and format
+     * @param emitter
+     * @param observation
+     * @param lastEventNumber number of the latest event the client received
+     */
+    SseConnection(SseConnection resumed, SseEmitter emitter, Observation observation, long lastEventNumber) {
+        this(resumed.userId, emitter, resumed.delta, observation, resumed.streamId);
+        this.resumed = resumed;
+        this.resumedNumber = lastEventNumber;
+    }
+
+    private SseConnection(Long userId, SseEmitter emitter, boolean delta, Observation observation, String streamId) {
+        this.userId = userId;
+        this.emitter = emitter;
+        this.delta = delta;
+        this.observation = observation;
+        this.streamId = streamId;
+    }
+
+    /**
+     * @param eventId id of an Update event
+     * @return the stream it belongs to, null if it isn't an event id
+     */
+    public static String streamIdOf(String eventId) {
+        int separator = eventId == null? -1 : eventId.lastIndexOf(':');
+        return separator < 1? null : eventId.substring(0, separator);
+    }
+
+    /**
+     * @param eventId id of an Update event
+     * @return its number within the stream, -1 if it isn't an event id
+     */
+    public static long eventNumberOf(String eventId) {
+        if (streamIdOf(eventId) == null) return -1;
+        try {
+            return Long.parseLong(eventId.substring(eventId.lastIndexOf(':') + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    public Map<Long, Long> getClientVersion() {
+        return clientVersion;
+    }
+
+    public Map<Long, JsonNode> getSentEntities() {
+        return sentEntities;
+    }
+
+    public Observation getObservation() {
+        return observation;
+    }
+
+    /**
+     * takes over what the client received on the connection this one resumes.
+     * versions sent after the latest event the client received may have been lost, they are forgotten.
+     */
+    public void restore() {
+        if (resumed == null) return;
+        eventNumber = resumed.eventNumber;
+        for (Map.Entry<Long, Long> sent : resumed.sentIn.entrySet()) {
+            if (sent.getValue() > resumedNumber) continue;
+            Long id = sent.getKey();
+            sentIn.put(id, sent.getValue());
+            Long version = resumed.clientVersion.get(id);
+            if (version != null) clientVersion.put(id, version);
+            JsonNode entity = resumed.sentEntities.get(id);
+            if (entity != null) sentEntities.put(id, entity);
+        }
+        resumed = null;
+    }
+
+    /**
+     * numbers the next Update event and records the entities it carries
+     * @param entityIds
+     * @return the id of the event
+     */
+    public String recordEvent(Collection<Long> entityIds) {
+        eventNumber++;
+        for (Long id : entityIds) sentIn.put(id, eventNumber);
+        return streamId + ":" + eventNumber;
+    }
+    /**
+     * @return a live view of the observed entity ids
+     */
+    public Set<Long> getObservedIds() {
+        return observation.getObservedIds();
+    }
+
+    public long getLastSent() {
+        return lastSent;
+    }
+
+    public void markSent(long time) {
+        this.lastSent = time;
+    }
+
+    Deque<SseWriter.Outbound> getOutbound() {
+        return outbound;
+    }
+
+    boolean isWriting() {
+        return writing;
+    }
+
+    void setWriting(boolean writing) {
+        this.writing = writing;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void setClosed() {
+        this.closed = true;
+    }
+}
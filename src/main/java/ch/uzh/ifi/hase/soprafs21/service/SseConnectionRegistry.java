@@ -0,0 +1,243 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.helpers.Observation;
+import ch.uzh.ifi.hase.soprafs21.helpers.ObservationPolicy;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE Connection Registry
+ * keeps track of the live SSE connections, any number per user (one per device),
+ * and of the connections observing an entity, so a change is only pushed to its observers
+ * in O(observers). The index follows the Observation of every connection incrementally.
+ * Reads never lock. Writes only lock the map entry of the user or entity concerned,
+ * so registrations and pushes of different users don't contend.
+ * The observed entities of a connection are recorded by the thread pushing updates.
+ * What a connection observes is bounded by the observation.* properties (see ObservationPolicy).
+ * Disconnected connections are retained for sse.resume.grace-seconds, so a client reconnecting
+ * with a Last-Event-ID only receives what it missed. Resumed streams are counted as sse.resumed.
+ */
+@Service
+public class SseConnectionRegistry {
+
+    public static final long DEFAULT_GRACE_SECONDS = 120;
+
+    private final ObservationPolicy policy;
+
+    // user id -> connections of the user, replaced as a whole on every change
+    private final Map<Long, List<SseConnection>> byUser = new ConcurrentHashMap<>();
+    private final Set<SseConnection> all = ConcurrentHashMap.newKeySet();
+    // connections that never received an update and thus observe nothing yet
+    private final Set<SseConnection> uninitialized = ConcurrentHashMap.newKeySet();
+    // entity id -> connections observing it
+    private final Map<Long, Set<SseConnection>> observers = new ConcurrentHashMap<>();
+    // stream id -> disconnected connection, until its client reconnects or the grace period is over
+    private final Cache<String, SseConnection> retained;
+
+    private final Counter resumed = Metrics.counter("sse.resumed");
+
+    @Autowired
+    public SseConnectionRegistry(
+            @Value("${observation.max-depth:" + ObservationPolicy.DEFAULT_MAX_DEPTH + "}") int maxDepth,
+            @Value("${observation.max-entities:" + ObservationPolicy.DEFAULT_MAX_ENTITIES + "}") int maxEntities,
+            @Value("${observation.max-messages:" + ObservationPolicy.DEFAULT_MAX_MESSAGES + "}") int maxMessages,
+            @Value("${sse.resume.grace-seconds:" + DEFAULT_GRACE_SECONDS + "}") long graceSeconds
+    ) {
+        this(new ObservationPolicy(maxDepth, maxEntities, maxMessages), graceSeconds);
+    }
+
+    public SseConnectionRegistry() {
+        this(ObservationPolicy.DEFAULT, DEFAULT_GRACE_SECONDS);
+    }
+
+    private SseConnectionRegistry(ObservationPolicy policy, long graceSeconds) {
+        this.policy = policy;
+        this.retained = Caffeine.newBuilder()
+                .expireAfterWrite(graceSeconds, TimeUnit.SECONDS)
+                .build();
+        Metrics.gauge("sse.connections", all, Set::size);
+    }
+
+    /**
+     * @param userId
+     * @param emitter
+     * @param delta whether the client wants entities it already holds as patches
+     * @return the new connection
+     */
+    public SseConnection register(Long userId, SseEmitter emitter, boolean delta) {
+        return register(new SseConnection(userId, emitter, delta, new Observation(userId, policy)));
+    }
+
+    /**
+     * continues a stream on a new connection, if the client asks for the same format.
+     * what the client received is restored by the first push (see SseConnection.restore).
+     * @param userId
+     * @param emitter
+     * @param delta whether the client wants entities it already holds as patches
+     * @param previous connection of the stream, see takeStream. null to start a new stream
+     * @param lastEventId Last-Event-ID sent by the client
+     * @return the new connection
+     */
+    public SseConnection register(Long userId, SseEmitter emitter, boolean delta, SseConnection previous, String lastEventId) {
+        if (previous == null || previous.isDelta() != delta) return register(userId, emitter, delta);
+        resumed.increment();
+        long lastEventNumber = SseConnection.eventNumberOf(lastEventId);
+        return register(new SseConnection(previous, emitter, new Observation(userId, policy), lastEventNumber));
+    }
+
+    /**
+     * removes the connection a reconnecting client received its last event on,
+     * whether it is still registered or retained
+     * @param userId
+     * @param lastEventId Last-Event-ID sent by the client, may be null
+     * @return the connection, null if there is none for the user
+     */
+    public SseConnection takeStream(Long userId, String lastEventId) {
+        String streamId = SseConnection.streamIdOf(lastEventId);
+        if (streamId == null) return null;
+        SseConnection previous = retained.getIfPresent(streamId);
+        if (previous != null) {
+            boolean taken = previous.getUserId().equals(userId) && retained.asMap().remove(streamId, previous);
+            return taken? previous : null;
+        }
+        // the client noticed the disconnect first, the request of the stale stream is released
+        for (SseConnection connection : getConnections(userId)) {
+            if (!connection.getStreamId().equals(streamId)) continue;
+            SseConnection taken = remove(userId, connection.getEmitter());
+            if (taken != null) taken.getEmitter().complete();
+            return taken;
+        }
+        return null;
+    }
+
+    SseConnection register(SseConnection connection) {
+        byUser.compute(connection.getUserId(), (id, connections) -> {
+            List<SseConnection> updated = connections == null? new ArrayList<>() : new ArrayList<>(connections);
+            updated.add(connection);
+            return Collections.unmodifiableList(updated);
+        });
+        uninitialized.add(connection);
+        all.add(connection);
+        return connection;
+    }
+
+    /**
+     * removes the connection of a user using the given emitter, retaining it so it can be resumed
+     * @param userId
+     * @param emitter
+     * @return the removed connection, null if there was none
+     */
+    public SseConnection unregister(Long userId, SseEmitter emitter) {
+        SseConnection removed = remove(userId, emitter);
+        if (removed != null) retained.put(removed.getStreamId(), removed);
+        return removed;
+    }
+
+    private SseConnection remove(Long userId, SseEmitter emitter) {
+        SseConnection[] removed = new SseConnection[1];
+        byUser.computeIfPresent(userId, (id, connections) -> {
+            List<SseConnection> updated = new ArrayList<>(connections.size());
+            for (SseConnection connection : connections) {
+                if (connection.getEmitter() == emitter) removed[0] = connection;
+                else updated.add(connection);
+            }
+            return updated.isEmpty()? null : Collections.unmodifiableList(updated);
+        });
+        if (removed[0] != null) forget(removed[0]);
+        return removed[0];
+    }
+
+    /**
+     * removes all connections of a user
+     * @param userId
+     * @return the removed connections
+     */
+    public List<SseConnection> unregisterAll(Long userId) {
+        List<SseConnection> removed = byUser.remove(userId);
+        if (removed == null) return Collections.emptyList();
+        for (SseConnection connection : removed) forget(connection);
+        return removed;
+    }
+
+    private void forget(SseConnection connection) {
+        // removed from all first, so a concurrent recordObserved cleans up after itself
+        all.remove(connection);
+        uninitialized.remove(connection);
+        removeObserver(connection, connection.getObservedIds());
+    }
+
+    public boolean isConnected(Long userId) {
+        return byUser.containsKey(userId);
+    }
+
+    /**
+     * @param userId
+     * @return the connections of a user, empty if there are none
+     */
+    public List<SseConnection> getConnections(Long userId) {
+        return byUser.getOrDefault(userId, Collections.emptyList());
+    }
+
+    /**
+     * @return a live view of all connections
+     */
+    public Collection<SseConnection> getConnections() {
+        return Collections.unmodifiableSet(all);
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    /**
+     * @param entityIds ids of changed entities
+     * @return the connections observing any of them, and those that observe nothing yet
+     */
+    public Set<SseConnection> getObservers(Collection<Long> entityIds) {
+        Set<SseConnection> found = new HashSet<>(uninitialized);
+        for (Long entityId : entityIds) {
+            Set<SseConnection> observing = observers.get(entityId);
+            if (observing != null) found.addAll(observing);
+        }
+        return found;
+    }
+
+    /**
+     * records the changes to the observation of a connection, as of its latest update.
+     * only the entities it started or stopped observing are touched.
+     * @param connection
+     */
+    public void recordObserved(SseConnection connection) {
+        Observation observation = connection.getObservation();
+        for (Long entityId : observation.getAdded()) {
+            observers.compute(entityId, (id, observing) -> {
+                if (observing == null) observing = ConcurrentHashMap.newKeySet();
+                observing.add(connection);
+                return observing;
+            });
+        }
+        removeObserver(connection, observation.getRemoved());
+        uninitialized.remove(connection);
+        // unregistered meanwhile
+        if (!all.contains(connection)) removeObserver(connection, observation.getObservedIds());
+    }
+
+    private void removeObserver(SseConnection connection, Set<Long> entityIds) {
+        for (Long entityId : entityIds) {
+            observers.computeIfPresent(entityId, (id, observing) -> {
+                observing.remove(connection);
+                return observing.isEmpty()? null : observing;
+            });
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * SSE Heartbeat
+ * queues "ConnectionTest" events so dead connections are detected and idle ones are kept open.
+ * A single scheduled task walks the live connections of the registry, so closed connections
+ * are forgotten as soon as they are unregistered. Connections that received anything within
+ * the interval or have something queued are skipped, and at most max-batch-size heartbeats
+ * are queued per run, the remaining ones being due in the next run.
+ * The SseWriter sends them and completes emitters that fail.
+ */
+@Service
+public class SseHeartbeat {
+
+    private final SseConnectionRegistry connections;
+    private final SseWriter sseWriter;
+    private final long interval;
+    private final int maxBatchSize;
+
+    @Autowired
+    public SseHeartbeat(
+            SseConnectionRegistry connections,
+            SseWriter sseWriter,
+            @Value("${sse.heartbeat.interval-millis:5000}") long interval,
+            @Value("${sse.heartbeat.max-batch-size:1000}") int maxBatchSize
+    ) {
+        this.connections = connections;
+        this.sseWriter = sseWriter;
+        this.interval = interval;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    @Scheduled(fixedDelayString = "${sse.heartbeat.tick-millis:1000}")
+    public void beat() {
+        long now = System.currentTimeMillis();
+        int sent = 0;
+        for (SseConnection connection : connections.getConnections()) {
+            if (sent >= maxBatchSize) return;
+            if (now - connection.getLastSent() < interval) continue;
+            if (sseWriter.sendHeartbeat(connection)) sent++;
+        }
+    }
+}
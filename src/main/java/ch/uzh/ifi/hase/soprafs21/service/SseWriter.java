@@ -0,0 +1,306 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SSE Writer
+ * writes events to the emitters on a pool of writer threads, so a slow client never blocks
+ * whoever produced the event (and its transaction).
+ * Every connection has a bounded outbound queue, drained by at most one writer at a time.
+ * When a client falls behind and its queue is full, the pending updates are coalesced into one
+ * holding only the newest state of every entity, and only the newest shared event of each name
+ * (e.g. the lobby list) is kept. Events for closed connections are dropped.
+ * Coalesced and dropped events are counted as sse.outbound.coalesced and sse.outbound.dropped.
+ * Sent events are counted per name as sse.events, sse.bytes and sse.send.failures.
+ */
+@Service
+public class SseWriter {
+
+    private final Logger log = LoggerFactory.getLogger(SseWriter.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final int queueCapacity;
+    private final ExecutorService executorService;
+
+    private final Counter coalesced = Metrics.counter("sse.outbound.coalesced");
+    private final Counter dropped = Metrics.counter("sse.outbound.dropped");
+    // event name -> its counters, looked up on every send
+    private final Map<String, EventCounters> eventCounters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SseWriter(
+            @Value("${sse.writer.threads:8}") int threads,
+            @Value("${sse.writer.queue-capacity:8}") int queueCapacity
+    ) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        for (String name : List.of("Update", "ConnectionTest", "Lobbies")) countersOf(name);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "sse-writer-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * queues an update. it must already be converted to JSON, as the state of the connection
+     * it is based on keeps changing.
+     * @param connection
+     * @param eventId id of the event, see SseConnection.recordEvent
+     * @param update JSON of the SseUpdateDTO
+     */
+    public void sendUpdate(SseConnection connection, String eventId, ObjectNode update) {
+        enqueue(connection, new Outbound("Update", eventId, update, null));
+    }
+
+    /**
+     * queues an event that is the same for all receivers, serialized once by the caller.
+     * a queued event of the same name is outdated and replaced.
+     * @param connection
+     * @param name
+     * @param payload JSON
+     */
+    public void sendShared(SseConnection connection, String name, String payload) {
+        enqueue(connection, new Outbound(name, null, payload));
+    }
+
+    /**
+     * queues a heartbeat unless something else is about to be sent anyway or the connection is closed
+     * @param connection
+     * @return whether a heartbeat was queued
+     */
+    public boolean sendHeartbeat(SseConnection connection) {
+        // held throughout, so the heartbeat never has to be coalesced
+        synchronized (connection.getOutbound()) {
+            if (connection.isClosed() || !connection.getOutbound().isEmpty()) return false;
+            enqueue(connection, new Outbound("ConnectionTest", null, null));
+            return true;
+        }
+    }
+
+    /**
+     * drops everything queued for a connection that is gone
+     * @param connection
+     */
+    public void close(SseConnection connection) {
+        synchronized (connection.getOutbound()) {
+            connection.setClosed();
+            dropped.increment(connection.getOutbound().size());
+            connection.getOutbound().clear();
+        }
+    }
+
+    void enqueue(SseConnection connection, Outbound event) {
+        Deque<Outbound> outbound = connection.getOutbound();
+        synchronized (outbound) {
+            if (connection.isClosed()) {
+                dropped.increment();
+                return;
+            }
+            if (event.payload != null && outbound.removeIf(queued -> queued.name.equals(event.name)))
+                coalesced.increment();
+            if (outbound.size() >= queueCapacity) coalesce(connection, event);
+            else outbound.add(event);
+            if (connection.isWriting()) return;
+            connection.setWriting(true);
+        }
+        try {
+            executorService.execute(() -> drain(connection));
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            close(connection);
+        }
+    }
+
+    /**
+     * replaces the queued events and the given one by the newest shared event of each name
+     * and a single update merging all queued updates, carrying the id of the newest one.
+     * queued heartbeats are dropped, any other event serves as one.
+     * must hold the lock of the outbound queue, and be called by the thread pushing updates.
+     */
+    private void coalesce(SseConnection connection, Outbound event) {
+        Deque<Outbound> outbound = connection.getOutbound();
+        outbound.add(event);
+        List<Outbound> updates = new ArrayList<>();
+        Map<String, Outbound> shared = new LinkedHashMap<>();
+        for (Outbound queued : outbound) {
+            if (queued.update != null) updates.add(queued);
+            else if (queued.payload != null) shared.put(queued.name, queued);
+        }
+        int queuedBefore = outbound.size();
+        outbound.clear();
+        outbound.addAll(shared.values());
+        if (!updates.isEmpty()) outbound.add(merge(connection, updates));
+        if (outbound.isEmpty()) outbound.add(event);
+        coalesced.increment(queuedBefore - outbound.size());
+    }
+
+    /**
+     * merges updates into one. the newest state of an entity replaces older ones.
+     * patches build on each other, so patched entities are sent as a whole,
+     * in the version the connection last recorded.
+     */
+    private Outbound merge(SseConnection connection, List<Outbound> updates) {
+        Outbound newestEvent = updates.get(updates.size() - 1);
+        ObjectNode newest = newestEvent.update;
+        ObjectNode entities = newest.with("observedEntities");
+        Set<String> patched = new HashSet<>();
+        for (int i = updates.size() - 1; i >= 0; i--) {
+            ObjectNode update = updates.get(i).update;
+            update.path("patches").fieldNames().forEachRemaining(patched::add);
+            if (update == newest) continue;
+            for (Iterator<Map.Entry<String, JsonNode>> it = update.path("observedEntities").fields(); it.hasNext();) {
+                Map.Entry<String, JsonNode> entity = it.next();
+                if (!entities.has(entity.getKey())) entities.set(entity.getKey(), entity.getValue());
+            }
+        }
+        for (String id : patched) {
+            JsonNode entity = connection.getSentEntities().get(Long.valueOf(id));
+            // entities no longer recorded are no longer observed
+            if (entity == null) entities.remove(id);
+            else entities.set(id, entity);
+        }
+        newest.remove("patches");
+        return new Outbound("Update", newestEvent.id, newest, null);
+    }
+
+    private void drain(SseConnection connection) {
+        while (true) {
+            Outbound event;
+            synchronized (connection.getOutbound()) {
+                event = connection.getOutbound().poll();
+                if (event == null) {
+                    connection.setWriting(false);
+                    return;
+                }
+            }
+            write(connection, event);
+        }
+    }
+
+    private EventCounters countersOf(String name) {
+        return eventCounters.computeIfAbsent(name, EventCounters::new);
+    }
+
+    private void write(SseConnection connection, Outbound event) {
+        SseEmitter emitter = connection.getEmitter();
+        EventCounters counters = countersOf(event.name);
+        try {
+            String payload = event.payload;
+            if (event.update != null) payload = objectMapper.writeValueAsString(event.update);
+            SseEmitter.SseEventBuilder builder = SseEmitter.event().name(event.name);
+            if (event.id != null) builder.id(event.id);
+            if (payload == null) {
+                emitter.send(builder.data(null));
+            } else {
+                emitter.send(builder.data(payload, MediaType.APPLICATION_JSON));
+                counters.bytes.increment(utf8Length(payload));
+            }
+            connection.markSent(System.currentTimeMillis());
+            counters.events.increment();
+        } catch (JsonProcessingException e) {
+            log.error("could not serialize " + event.name + " for User " + connection.getUserId(), e);
+        } catch (IOException | IllegalStateException e) {
+            // the emitter failed or completed already, nothing queued will arrive anymore
+            counters.failures.increment();
+            log.error("could not send " + event.name + " to User " + connection.getUserId());
+            close(connection);
+            if (e instanceof IOException) emitter.completeWithError(new ConnectException());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * @param text
+     * @return the number of bytes the text takes in UTF-8, without encoding it
+     */
+    static int utf8Length(String text) {
+        int length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) continue;
+            if (c < 0x800) {
+                length += 1;
+            } else if (!Character.isSurrogate(c)) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // a surrogate pair takes 4 bytes for its 2 chars, a lone surrogate is encoded as '?'
+                length += 2;
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private static final class EventCounters {
+
+        private final Counter events;
+        private final Counter bytes;
+        private final Counter failures;
+
+        private EventCounters(String name) {
+            this.events = Metrics.counter("sse.events", "name", name);
+            this.bytes = Metrics.counter("sse.bytes", "name", name);
+            this.failures = Metrics.counter("sse.send.failures", "name", name);
+        }
+    }
+
+    /**
+     * an event waiting in an outbound queue: an update of a single receiver,
+     * a payload shared by all receivers, or neither for heartbeats.
+     * only updates carry an id.
+     */
+    static final class Outbound {
+
+        private final String name;
+        private final String id;
+        private final ObjectNode update;
+        private final String payload;
+
+        Outbound(String name, String id, ObjectNode update, String payload) {
+            this.name = name;
+            this.id = id;
+            this.update = update;
+            this.payload = payload;
+        }
+
+        Outbound(String name, ObjectNode update, String payload) {
+            this(name, null, update, payload);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        ObjectNode getUpdate() {
+            return update;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeEvent;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityDTOCache;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityJsonCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Update Dispatcher
+ * collects the ids of changed entities, refreshes the lobby directory
+ * and pushes them to the subscribers observing them.
+ * Events are only handled once their transaction committed, and all changes arriving
+ * while a push is running are coalesced into the next one.
+ */
+@Service
+public class UpdateDispatcher {
+
+    private final Logger log = LoggerFactory.getLogger(UpdateDispatcher.class);
+
+    private final UserService userService;
+    private final LobbyDirectory lobbyDirectory;
+    private final EntityDTOCache entityDTOCache;
+    private final EntityJsonCache entityJsonCache;
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    private final Set<Long> dirtyIds = ConcurrentHashMap.newKeySet();
+    // game id -> whether the game is an open lobby after its latest change
+    private final Map<Long, Boolean> lobbyFlags = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    @Autowired
+    public UpdateDispatcher(
+            UserService userService,
+            LobbyDirectory lobbyDirectory,
+            EntityDTOCache entityDTOCache,
+            EntityJsonCache entityJsonCache
+    ) {
+        this.userService = userService;
+        this.lobbyDirectory = lobbyDirectory;
+        this.entityDTOCache = entityDTOCache;
+        this.entityJsonCache = entityJsonCache;
+    }
+
+    /**
+     * invalidates the cached DTO and JSON of a changed entity,
+     * marks the entity as dirty and schedules a push if none is pending.
+     * games report whether they are open lobbies, which the LobbyDirectory lists.
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntityChange(EntityChangeEvent event) {
+        Long entityId = event.getEntityId();
+        if (entityId == null) return;
+        // must happen before the push, otherwise it could send the stale DTO
+        entityDTOCache.invalidate(entityId);
+        entityJsonCache.invalidate(entityId);
+        // before marking it dirty, so the dispatch taking the id finds its flag
+        if (event.getLobby() != null) lobbyFlags.put(entityId, event.getLobby());
+        dirtyIds.add(entityId);
+        if (scheduled.compareAndSet(false, true)) executorService.execute(this::dispatch);
+    }
+
+    private void dispatch() {
+        // reset first so changes arriving during the push schedule another one
+        scheduled.set(false);
+        Set<Long> batch = new HashSet<>();
+        for (Iterator<Long> it = dirtyIds.iterator(); it.hasNext();) {
+            batch.add(it.next());
+            it.remove();
+        }
+        Map<Long, Boolean> flags = new HashMap<>();
+        for (Long gameId : batch) {
+            Boolean lobby = lobbyFlags.remove(gameId);
+            if (lobby != null) flags.put(gameId, lobby);
+        }
+        if (batch.isEmpty()) return;
+        try {
+            lobbyDirectory.refresh(batch, flags);
+        } catch (RuntimeException e) {
+            log.error("could not refresh lobbies " + flags.keySet(), e);
+        }
+        try {
+            userService.pushUpdates(batch);
+        } catch (RuntimeException e) {
+            log.error("could not push updates for " + batch, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+}
@@ -4,24 +4,28 @@ import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.Game;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeEvent;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityJsonCache;
+import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
+import ch.uzh.ifi.hase.soprafs21.helpers.UsernameCache;
 import ch.uzh.ifi.hase.soprafs21.repository.GameRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.MessageChannelRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.SseUpdateDTO;
 import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
 import java.util.*;
 
 /**
@@ -37,40 +41,55 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final GameRepository gameRepository;
+    private final SseWriter sseWriter;
+    private final SseConnectionRegistry connections;
+    private final LobbyDirectory lobbyDirectory;
+    private final EntityJsonCache entityJsonCache;
+    private final UsernameCache usernameCache;
 
-    //map key UI to SseEmitter
-    private final Map<Long , SseEmitter> subscriberMapping = new HashMap<>();
-    private final Map<Long , Map<Long, Long>> clientVersions = new HashMap<>();
+    private final Timer userStatesTimer = Metrics.timer("users.states.update");
+    private final Timer pushTimer = Metrics.timer("sse.push");
 
 
     @Autowired
     public UserService(
             @Qualifier("userRepository") UserRepository userRepository,
-            @Qualifier("gameRepository") GameRepository gameRepository
+            @Qualifier("gameRepository") GameRepository gameRepository,
+            SseWriter sseWriter,
+            SseConnectionRegistry connections,
+            LobbyDirectory lobbyDirectory,
+            EntityJsonCache entityJsonCache,
+            UsernameCache usernameCache
     ) {
         this.userRepository = userRepository;
         this.gameRepository = gameRepository;
+        this.sseWriter = sseWriter;
+        this.connections = connections;
+        this.lobbyDirectory = lobbyDirectory;
+        this.entityJsonCache = entityJsonCache;
+        this.usernameCache = usernameCache;
     }
 
     /**
-     * Loop running every 1000ms to update user states
+     * Loop running every 10s to repair user states.
+     * Updates are no longer polled, they are pushed by the UpdateDispatcher.
      */
-    @Scheduled(fixedRate=100)
-    public void updateUsers(){
-        //list of all users who are in games (State PLAYING)
-        long now = System.currentTimeMillis();
+    @Scheduled(fixedRate=10000)
+    public void updateUserStates(){
+        userStatesTimer.record(this::repairUserStates);
+    }
 
+    private void repairUserStates(){
+        //list of all users who are in games (State PLAYING)
         for (User user : userRepository.findAllByStatus(UserStatus.PLAYING)) {
             //check if the User is actually subscribed
-            if (!subscriberMapping.containsKey(user.getUserId())){
+            if (!connections.isConnected(user.getUserId())){
                 user.setStatus(UserStatus.OFFLINE);
-                userRepository.flush();
                 continue;
             }
             // users without a game are set to IDLE
             if (user.getCurrentGameId() == null) {
                 user.setStatus(UserStatus.IDLE);
-                userRepository.flush();
                 continue;
             }
 
@@ -79,7 +98,6 @@ public class UserService {
             if (game == null || !game.getPlayerState(user.getUserId()).isEnrolled()) {
                 user.setCurrentGameId(null);
                 user.setStatus(UserStatus.IDLE);
-                userRepository.flush();
             }
         }
         //list of all users wo are in State IDLE
@@ -87,33 +105,52 @@ public class UserService {
             // if the user has a game, set status to PLAYING
             if (user.getCurrentGameId()!= null){
                 user.setStatus(UserStatus.PLAYING);
-                userRepository.flush();
             }
-            if (!subscriberMapping.containsKey(user.getUserId())){
+            if (!connections.isConnected(user.getUserId())){
                 user.setStatus(UserStatus.OFFLINE);
-                userRepository.flush();
-            }
-        }
-
-        for (Long userId : subscriberMapping.keySet()) {
-            // find users and corresponding sseEmitter in subscriber Map.
-            User user = userRepository.findByUserId(userId);
-            if (!clientVersions.containsKey(userId)) clientVersions.put(userId, new HashMap<>());
-            Map<Long, Long> clientVersion = clientVersions.get(userId);
-            SseEmitter sseEmitter = subscriberMapping.get(userId);
-            SseUpdateDTO sseUpdateDTO = DTOMapper.INSTANCE.convertEntityToSseUpdateDTO(user);
-            if (sseUpdateDTO == null) continue;
-            sseUpdateDTO.init();
-            if (!sseUpdateDTO.filter(clientVersion, now)) continue;
-            try {
-                sseEmitter.send(SseEmitter.event().name("Update").data(sseUpdateDTO, MediaType.APPLICATION_JSON));
-            } catch(IOException e) {
-                log.error("could not update User " + userId);
             }
         }
         userRepository.flush();
     }
 
+    /**
+     * pushes an update to every subscriber observing one of the given entities.
+     * subscribers that never received an update are always pushed.
+     * updates are only queued here, the SseWriter sends them outside of the transaction.
+     * the receiving users are loaded with a single query.
+     * @param dirtyIds ids of the entities that changed
+     */
+    public void pushUpdates(Set<Long> dirtyIds) {
+        pushTimer.record(() -> {
+            Set<SseConnection> observers = connections.getObservers(dirtyIds);
+            if (observers.isEmpty()) return;
+            Set<Long> userIds = new HashSet<>();
+            for (SseConnection connection : observers) userIds.add(connection.getUserId());
+            Map<Long, User> users = new HashMap<>();
+            for (User user : userRepository.findAllById(userIds)) users.put(user.getUserId(), user);
+            for (SseConnection connection : observers) pushUpdate(connection, users.get(connection.getUserId()), dirtyIds);
+        });
+    }
+
+    private void pushUpdate(SseConnection connection, User user, Set<Long> dirtyIds) {
+        if (user == null) return;
+        // a resumed stream starts from what its client received
+        connection.restore();
+        SseUpdateDTO sseUpdateDTO = DTOMapper.INSTANCE.convertEntityToSseUpdateDTO(user);
+        if (sseUpdateDTO == null) return;
+        // only changed and newly observed entities are collected
+        sseUpdateDTO.init(connection.getObservation(), dirtyIds);
+        connections.recordObserved(connection);
+        // forget entities the client no longer observes
+        connection.getSentEntities().keySet().removeAll(connection.getObservation().getRemoved());
+        boolean modified = sseUpdateDTO.filter(connection.getClientVersion());
+        if (modified && connection.isDelta()) modified = sseUpdateDTO.toDelta(connection.getSentEntities(), entityJsonCache);
+        if (!modified) return;
+        Set<Long> sent = new HashSet<>(sseUpdateDTO.getObservedEntities().keySet());
+        sent.addAll(sseUpdateDTO.getPatches().keySet());
+        String eventId = connection.recordEvent(sent);
+        sseWriter.sendUpdate(connection, eventId, sseUpdateDTO.toJson(entityJsonCache));
+    }
 
 
     public List<User> getUsers() {
@@ -137,6 +174,8 @@ public class UserService {
         // saves the given entity but data is only persisted in the database once flush() is called
         newUser = userRepository.save(newUser);
         userRepository.flush();
+        // the name may have been looked up before, e.g. in a mention
+        usernameCache.invalidate(newUser.getUsername());
 
         log.debug("Created Information for User: {}", newUser);
         return newUser;
@@ -168,6 +207,7 @@ public class UserService {
         String newUsername = updateEntity.getUsername();
         if (newUsername != null && !newUsername.equals(user.getUsername())) {
             checkUsernameConstraints(newUsername);
+            usernameCache.invalidate(user.getUsername(), newUsername);
             user.setUsername(newUsername);
         }
 
@@ -451,19 +491,56 @@ public class UserService {
      * The subscriber method for our SSEController
      */
     public void putSubscriber(Long userId, SseEmitter emitter) {
+        putSubscriber(userId, emitter, false, null);
+    }
+
+    /**
+     * a user may subscribe from several devices, each getting its own connection.
+     * a client reconnecting within the grace period resumes its stream
+     * and only receives the entities modified since its last event.
+     * @param userId
+     * @param emitter
+     * @param delta whether the client wants entities it already holds as patches
+     * @param lastEventId Last-Event-ID sent by a reconnecting client, null otherwise
+     */
+    public void putSubscriber(Long userId, SseEmitter emitter, boolean delta, String lastEventId) {
         User user = userRepository.findByUserId(userId);
         if (user == null) return;
-        subscriberMapping.put(userId, emitter);
-        user.setStatus(UserStatus.IDLE);
+        SseConnection previous = connections.takeStream(userId, lastEventId);
+        if (previous != null) sseWriter.close(previous);
+        SseConnection connection = connections.register(userId, emitter, delta, previous, lastEventId);
+        lobbyDirectory.sendTo(connection);
+        user.setStatus(user.getCurrentGameId() == null? UserStatus.IDLE : UserStatus.PLAYING);
         userRepository.flush();
+        // the new subscriber needs an initial update even if nothing changed
+        SpringContext.publishEvent(new EntityChangeEvent(userId));
     }
 
-    public void removeSubscriber(Long userId) {
-        subscriberMapping.remove(userId);
-        clientVersions.remove(userId);
+    /**
+     * removes the connection of a single device. the user goes offline with the last one.
+     * @param userId
+     * @param emitter
+     */
+    public void removeSubscriber(Long userId, SseEmitter emitter) {
+        SseConnection connection = connections.unregister(userId, emitter);
+        if (connection == null) return;
+        sseWriter.close(connection);
+        if (!connections.isConnected(userId)) setOffline(userId);
     }
 
+    /**
+     * removes all connections of a user
+     * @param userId
+     */
+    public void removeSubscriber(Long userId) {
+        for (SseConnection connection : connections.unregisterAll(userId)) sseWriter.close(connection);
+        setOffline(userId);
+    }
 
-
-
+    private void setOffline(Long userId) {
+        User user = userRepository.findByUserId(userId);
+        if (user == null) return;
+        user.setStatus(UserStatus.OFFLINE);
+        userRepository.flush();
+    }
 }
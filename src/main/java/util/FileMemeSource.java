@@ -0,0 +1,47 @@
+package util;
+
+import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * stand-in for reddit when running offline.
+ * reads meme urls from a file, one per line. blank lines and lines starting with # are skipped.
+ * every subreddit and meme type gets the same memes.
+ */
+public class FileMemeSource implements MemeSource {
+
+    private final List<String> memes;
+
+    public FileMemeSource(Resource file) {
+        List<String> memes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) memes.add(line);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not read memes from " + file, e);
+        }
+        this.memes = Collections.unmodifiableList(memes);
+    }
+
+    @Override
+    public List<String> fetch(String subreddit, MemeType memeType) {
+        return memes;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+}
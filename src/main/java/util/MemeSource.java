@@ -0,0 +1,26 @@
+package util;
+
+import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
+
+import java.util.List;
+
+/**
+ * MemeSources look up the urls of memes for a subreddit and meme type.
+ * implementations may block, the MemeCatalogue calls them off the request threads.
+ */
+public interface MemeSource {
+
+    /**
+     * @param subreddit
+     * @param memeType
+     * @return urls of the memes found, possibly empty
+     */
+    List<String> fetch(String subreddit, MemeType memeType);
+
+    /**
+     * @return whether fetching is cheap enough to be done on the calling thread
+     */
+    default boolean isLocal() {
+        return false;
+    }
+}
@@ -26,7 +26,17 @@ import java.util.function.Supplier;
 public class MemeUrlSupplier implements Supplier<String> {
 
     public static MemeUrlSupplier create(String baseURL, String config) {
-        return new redditURLs(baseURL, config);
+        return new redditURLs(baseURL, config, new RestTemplate());
+    }
+
+    /**
+     * @param baseURL subreddit
+     * @param config meme type
+     * @param restTemplate template to send the request with, e.g. one with timeouts
+     * @return a supplier of the memes found
+     */
+    public static MemeUrlSupplier create(String baseURL, String config, RestTemplate restTemplate) {
+        return new redditURLs(baseURL, config, restTemplate);
     }
 
     protected String baseURL;
@@ -46,12 +56,10 @@ public class MemeUrlSupplier implements Supplier<String> {
 
 
     private static class redditURLs extends MemeUrlSupplier{
-        private redditURLs(String subreddit, String memeType){
+        private redditURLs(String subreddit, String memeType, RestTemplate restTemplate){
 
             String url = "https://reddit.com/r/"+subreddit+"/"+memeType+".json?sort="+memeType+"&limit=100";
 
-            RestTemplate restTemplate = new RestTemplate();
-
             HttpHeaders headers = new HttpHeaders();
             headers.setAccept(Arrays.asList(new MediaType[] { MediaType.APPLICATION_JSON }));
             headers.setContentType(MediaType.APPLICATION_JSON);
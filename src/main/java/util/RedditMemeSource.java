@@ -0,0 +1,28 @@
+package util;
+
+import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+
+/**
+ * looks up memes with the reddit API.
+ * requests time out, so a slow reddit can't hold up the fetching threads forever.
+ */
+public class RedditMemeSource implements MemeSource {
+
+    private final RestTemplate restTemplate;
+
+    public RedditMemeSource(int timeoutMillis) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMillis);
+        requestFactory.setReadTimeout(timeoutMillis);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Override
+    public List<String> fetch(String subreddit, MemeType memeType) {
+        return MemeUrlSupplier.create(subreddit, memeType.toString().toLowerCase(), restTemplate).getMemeList();
+    }
+}
@@ -0,0 +1,45 @@
+package ch.uzh.ifi.hase.soprafs21.constant;
+
+import ch.uzh.ifi.hase.soprafs21.entity.Game;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * testing that entity types are encoded in and resolved from ids
+ */
+public class EntityTypeTest {
+
+    @Test
+    public void composedIdsResolveToTheirType() {
+        for (EntityType type : EntityType.values()) {
+            if (type == EntityType.UNKNOWN) continue;
+            Long id = type.id(12345L, 7);
+            assertEquals(type, EntityType.get(id));
+            assertEquals(12345L, EntityType.serialOf(id));
+            assertEquals(7, EntityType.indexOf(id));
+        }
+    }
+
+    @Test
+    public void invalidIdsAreUnknown() {
+        assertEquals(EntityType.UNKNOWN, EntityType.get(null));
+        assertEquals(EntityType.UNKNOWN, EntityType.get(-1L));
+        assertEquals(EntityType.UNKNOWN, EntityType.get(15L));
+        assertThrows(IllegalArgumentException.class, () -> EntityType.GAME.id(1L, 64));
+        assertThrows(IllegalArgumentException.class, () -> EntityType.UNKNOWN.id(1L, 0));
+    }
+
+    @Test
+    public void gameDerivedIdsShareTheSerial() {
+        Game game = new Game().setGameId(EntityType.GAME.id(42L, 0));
+
+        assertEquals(EntityType.GAME_SUMMARY, EntityType.get(game.getGameSummaryId()));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(EntityType.GAME_ROUND, EntityType.get(game.getGameRoundId(i)));
+            assertEquals(EntityType.GAME_ROUND_SUMMARY, EntityType.get(game.getGameRoundSummaryId(i)));
+            assertEquals(42L, EntityType.serialOf(game.getGameRoundId(i)));
+            assertEquals(i, EntityType.indexOf(game.getGameRoundSummaryId(i)));
+        }
+    }
+}
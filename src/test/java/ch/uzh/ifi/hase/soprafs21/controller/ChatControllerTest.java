@@ -135,6 +135,7 @@ public class ChatControllerTest {
         given(userService.verifyUser(Mockito.any(), Mockito.any())).willReturn(user);
         given(chatService.verifyReader(Mockito.any(), Mockito.any())).willReturn(newMessageChannel);
         given(chatService.getMessageChannel(Mockito.any())).willReturn(newMessageChannel);
+        given(chatService.getMessages(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt())).willReturn(messageList);
 
         MockHttpServletRequestBuilder getRequest = get("/chat/" + newMessageChannel.getMessageChannelId())
                 .header("userId", user.getUserId())
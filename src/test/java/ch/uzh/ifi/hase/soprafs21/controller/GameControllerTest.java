@@ -7,10 +7,13 @@ import ch.uzh.ifi.hase.soprafs21.entity.Game;
 import ch.uzh.ifi.hase.soprafs21.entity.GameSettings;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.GameDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.GameSettingsDTO;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.GameSettingsPostDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.LobbyDTO;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.UserLoginDTO;
 import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
 import ch.uzh.ifi.hase.soprafs21.service.GameService;
+import ch.uzh.ifi.hase.soprafs21.service.LobbyDirectory;
 import ch.uzh.ifi.hase.soprafs21.service.UserService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -27,6 +30,8 @@ import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 
 import static org.hamcrest.Matchers.is;
 import static org.mockito.BDDMockito.given;
@@ -49,6 +54,9 @@ public class GameControllerTest {
     @MockBean
     private DTOMapper dtoMapper;
 
+    @MockBean
+    private LobbyDirectory lobbyDirectory;
+
 
     //Input: gameSettingsPostDTO
     //Output: GamePrivateDTO
@@ -410,6 +418,42 @@ public class GameControllerTest {
     }
 
 
+    @Test
+    public void TestGetLobbies() throws Exception{
+        User user = new User();
+        user.setUserId(1L);
+        user.setToken("someToken");
+
+        GameDTO game = new GameDTO();
+        game.setId(2L);
+        game.setPlayerStates(new HashMap<>());
+        GameSettingsDTO settings = new GameSettingsDTO();
+        settings.setId(3L);
+        settings.setName("SomeName");
+        settings.setMaxPlayers(5);
+        LobbyDTO lobby = LobbyDTO.of(game, settings);
+
+        given(userService.verifyUser(Mockito.any(), Mockito.any())).willReturn(user);
+        given(lobbyDirectory.find("some", null, 1, 0, 20)).willReturn(Collections.singletonList(lobby));
+
+        MockHttpServletRequestBuilder getRequest = get("/lobbies")
+                .header("userId", user.getUserId())
+                .header("token", user.getToken())
+                .param("name", "some")
+                .param("freeSlots", "1");
+
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].gameId", is(2)))
+                .andExpect(jsonPath("$[0].freeSlots", is(5)));
+
+        mockMvc.perform(get("/lobbies")
+                .header("userId", user.getUserId())
+                .header("token", user.getToken())
+                .param("size", "1000"))
+                .andExpect(status().isBadRequest());
+    }
+
+
     private String asJsonString ( final Object object){
         try {
             return new ObjectMapper().writeValueAsString(object);
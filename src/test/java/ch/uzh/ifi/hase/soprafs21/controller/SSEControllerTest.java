@@ -119,6 +119,24 @@ public class SSEControllerTest {
     }
 
 
+    @Test
+    public void TestGetEntitiesTooMany() throws Exception {
+        User testUser1 = new User();
+        testUser1.setToken("someToken");
+        testUser1.setUserId(5L);
+
+        given(userService.verifyUser(Mockito.any(), Mockito.any())).willReturn(testUser1);
+
+        String[] ids = new String[101];
+        for (int i = 0; i < ids.length; i++) ids[i] = String.valueOf(i);
+        MockHttpServletRequestBuilder getRequest = get("/entities")
+                .header("userId", testUser1.getUserId())
+                .header("token", testUser1.getToken())
+                .param("ids", ids);
+
+        mockMvc.perform(getRequest).andExpect(status().isBadRequest());
+    }
+
     private String asJsonString ( final Object object){
         try {
             return new ObjectMapper().writeValueAsString(object);
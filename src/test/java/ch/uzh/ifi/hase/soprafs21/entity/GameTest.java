@@ -1,6 +1,7 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
 import ch.uzh.ifi.hase.soprafs21.constant.GameState;
+import ch.uzh.ifi.hase.soprafs21.constant.GameUpdateResponse;
 import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
 import ch.uzh.ifi.hase.soprafs21.constant.PlayerState;
 import ch.uzh.ifi.hase.soprafs21.constant.RoundPhase;
@@ -74,6 +75,23 @@ class GameTest {
 
     }
 
+    @Test
+    void updateLobbyWithoutTransition() {
+
+        // creating objects
+        User gameMaster = new User();
+        gameMaster.setUserId(1l);
+
+        Game game = new Game();
+        game.setGameId(1l);
+        game.initialize(gameMaster);
+
+        // not enough players to close the lobby, so nothing happens and nothing is due
+        assertEquals(GameUpdateResponse.OK, game.update());
+        assertEquals(GameState.LOBBY, game.getGameState());
+        assertNull(game.getNextDeadline());
+    }
+
     @Test
     void gameAlreadyInitializedError(){
         // creating objects
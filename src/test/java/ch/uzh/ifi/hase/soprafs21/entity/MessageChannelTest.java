@@ -0,0 +1,40 @@
+package ch.uzh.ifi.hase.soprafs21.entity;
+
+import ch.uzh.ifi.hase.soprafs21.constant.ChatRole;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the roles of a MessageChannel
+ */
+public class MessageChannelTest {
+
+    @Test
+    public void rolesAreKeptAsBitmasksAndIndexed() {
+        MessageChannel channel = new MessageChannel();
+        channel.addRole(1L, ChatRole.ADMIN);
+        channel.addRole(1L, ChatRole.ALL);
+        channel.addRole(2L, ChatRole.ALL);
+
+        assertTrue(channel.verifyParticipant(1L));
+        assertTrue(channel.hasRole(1L, ChatRole.ADMIN));
+        assertFalse(channel.hasRole(2L, ChatRole.ADMIN));
+        assertEquals(Set.of(1L, 2L), channel.getReferenced("@all"));
+        assertEquals(Set.of(1L), channel.getReferenced("@admin"));
+        assertEquals(Map.of(1L, "@all@admin", 2L, "@all"), channel.getRoleTags());
+
+        channel.removeRole(2L, ChatRole.ALL);
+        assertFalse(channel.verifyParticipant(2L));
+        assertEquals(Set.of(1L), channel.getReferenced("@all"));
+        // former participants stay listed
+        assertEquals("", channel.getRoleTags().get(2L));
+
+        assertEquals(Set.of(5L), channel.getReferenced("@#5"));
+        assertTrue(channel.getReferenced("@#five").isEmpty());
+        assertTrue(channel.getReferenced("@nobody").isEmpty());
+    }
+}
@@ -0,0 +1,46 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the EntityJsonCache
+ */
+class EntityJsonCacheTest {
+
+    private final EntityJsonCache cache = new EntityJsonCache(100, 60);
+
+    private UserDTO user(long lastModified, String username) {
+        UserDTO dto = new UserDTO();
+        dto.setId(1L);
+        dto.setUsername(username);
+        dto.setFriends(new HashSet<>());
+        dto.setLastModified(lastModified);
+        return dto;
+    }
+
+    @Test
+    void serializedOncePerCropClass() {
+        EntityJsonCache.Serialized forOther = cache.get(user(10, "alice"), 2L);
+        assertSame(forOther, cache.get(user(10, "alice"), 3L));
+        assertNotSame(forOther, cache.get(user(10, "alice"), 1L));
+        assertEquals("alice", forOther.getTree().get("username").asText());
+        assertTrue(forOther.getJson().contains("\"username\":\"alice\""));
+    }
+
+    @Test
+    void newerVersionsReplaceOlderOnes() {
+        cache.get(user(10, "alice"), 2L);
+        assertEquals("bob", cache.get(user(20, "bob"), 2L).getTree().get("username").asText());
+        // an outdated copy is serialized as is, without replacing the newer version
+        assertEquals("alice", cache.get(user(10, "alice"), 2L).getTree().get("username").asText());
+        assertEquals("bob", cache.get(user(20, "bob"), 3L).getTree().get("username").asText());
+
+        cache.invalidate(1L);
+        assertEquals("carol", cache.get(user(20, "carol"), 2L).getTree().get("username").asText());
+    }
+}
@@ -0,0 +1,31 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the MessageTokens
+ */
+class MessageTokensTest {
+
+    @Test
+    void parsesMentionsAndCommand() {
+        MessageTokens tokens = MessageTokens.parse("@bob /kick @#1024 now /ignored");
+        assertEquals(List.of("@bob", "@#1024"), tokens.getMentions());
+        assertEquals("/kick", tokens.getCommand());
+        assertEquals("@#1024", tokens.getArgument(1));
+        assertEquals("now", tokens.getArgument(2));
+        assertNull(tokens.getArgument(4));
+        assertNull(MessageTokens.parse("no command").getArgument(0));
+    }
+
+    @Test
+    void replacesWholeMentionsOnly() {
+        MessageTokens tokens = MessageTokens.parse("hi @bob and @bobby, @b.b");
+        String replaced = tokens.replaceMentions(mention -> mention.equals("@bob")? "@#1" : mention);
+        assertEquals("hi @#1 and @bobby, @b.b", replaced);
+    }
+}
@@ -0,0 +1,114 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.EntityDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the Observation, on a graph of users linked by friendship
+ */
+class ObservationTest {
+
+    private final Map<Long, Set<Long>> friends = new HashMap<>();
+    private final List<Long> loaded = new ArrayList<>();
+
+    private final Observation observation = new Observation(this::load);
+
+    private EntityDTO load(Long id) {
+        if (!friends.containsKey(id)) return null;
+        loaded.add(id);
+        UserDTO dto = new UserDTO();
+        dto.setId(id);
+        dto.setFriends(new HashSet<>(friends.get(id)));
+        return dto;
+    }
+
+    private static Long user(long serial) {
+        return EntityType.USER.id(serial, 0);
+    }
+
+    private void link(long id, Long... friendIds) {
+        friends.put(id, new HashSet<>(Arrays.asList(friendIds)));
+    }
+
+    @Test
+    void onlyChangedAndNewEntitiesAreLoaded() {
+        link(1, 2L);
+        link(2);
+        link(3);
+        Map<Long, EntityDTO> found = observation.update(Set.of(1L), null);
+        assertEquals(Set.of(1L, 2L), found.keySet());
+        assertEquals(Set.of(1L, 2L), observation.getAdded());
+
+        // 2 befriends 3: only 2 is reloaded, 3 is expanded
+        loaded.clear();
+        link(2, 3L);
+        found = observation.update(Set.of(1L), Set.of(2L));
+        assertEquals(Set.of(2L, 3L), found.keySet());
+        assertEquals(List.of(2L, 3L), loaded);
+        assertEquals(Set.of(3L), observation.getAdded());
+        assertTrue(observation.getRemoved().isEmpty());
+
+        // changes of unobserved entities are ignored
+        loaded.clear();
+        assertTrue(observation.update(Set.of(1L), Set.of(4L)).isEmpty());
+        assertTrue(loaded.isEmpty());
+    }
+
+    @Test
+    void unreachableEntitiesAreForgotten() {
+        link(1, 2L, 3L);
+        link(2, 3L);
+        link(3);
+        observation.update(Set.of(1L), null);
+
+        // 3 is still reachable through 2
+        link(1, 2L);
+        observation.update(Set.of(1L), Set.of(1L));
+        assertEquals(Set.of(1L, 2L, 3L), observation.getObservedIds());
+        assertTrue(observation.getRemoved().isEmpty());
+
+        link(2);
+        observation.update(Set.of(1L), Set.of(2L));
+        assertEquals(Set.of(1L, 2L), observation.getObservedIds());
+        assertEquals(Set.of(3L), observation.getRemoved());
+
+        // dropping a root
+        observation.update(Set.of(2L), Set.of());
+        assertEquals(Set.of(2L), observation.getObservedIds());
+        assertEquals(Set.of(1L), observation.getRemoved());
+    }
+
+    @Test
+    void friendsOfFriendsAreStubs() {
+        link(user(1), user(2));
+        link(user(2), user(1), user(3));
+        link(user(3), user(2));
+        Observation bounded = new Observation(this::load, ObservationPolicy.DEFAULT);
+        bounded.update(Set.of(user(1)), null);
+        assertEquals(Set.of(user(1), user(2)), bounded.getObservedIds());
+        assertEquals(Set.of(user(3)), bounded.getStubs());
+
+        // observed explicitly, a friend is expanded as well
+        bounded.update(Set.of(user(1), user(2)), Set.of());
+        assertEquals(Set.of(user(1), user(2), user(3)), bounded.getObservedIds());
+        assertTrue(bounded.getStubs().isEmpty());
+    }
+
+    @Test
+    void observedEntitiesAreLimited() {
+        link(user(1), user(2), user(3));
+        link(user(2), user(1), user(3));
+        link(user(3), user(1), user(2));
+        Observation bounded = new Observation(this::load, new ObservationPolicy(4, 2, 50));
+        bounded.update(Set.of(user(1)), null);
+        assertTrue(bounded.getObservedIds().contains(user(1)));
+        assertEquals(2, bounded.getObservedIds().size());
+        assertEquals(1, bounded.getStubs().size());
+    }
+}
@@ -0,0 +1,76 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the UsernameCache, looking names up in a mocked UserRepository
+ */
+class UsernameCacheTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private final Map<String, User> users = new HashMap<>();
+
+    private UsernameCache usernameCache;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        addUser(1L, "alice");
+        addUser(2L, "bob");
+        when(userRepository.findAllByUsernameIn(any())).thenAnswer(invocation -> {
+            Collection<String> usernames = invocation.getArgument(0);
+            return usernames.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList());
+        });
+        usernameCache = new UsernameCache(userRepository, 100, 300);
+    }
+
+    private void addUser(Long userId, String username) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setUsername(username);
+        users.put(username, user);
+    }
+
+    @Test
+    void missesAreLoadedWithOneQuery() {
+        assertEquals(Map.of("alice", 1L, "bob", 2L), usernameCache.resolve(List.of("alice", "bob", "all")));
+        verify(userRepository, times(1)).findAllByUsernameIn(Set.of("alice", "bob", "all"));
+    }
+
+    @Test
+    void hitsAreNotLoadedAgain() {
+        usernameCache.resolve(List.of("alice", "all"));
+
+        // names without user are cached as well, only the new name is loaded
+        assertEquals(Map.of("alice", 1L, "bob", 2L), usernameCache.resolve(List.of("alice", "bob", "all")));
+        verify(userRepository).findAllByUsernameIn(Set.of("bob"));
+
+        assertEquals(Map.of("bob", 2L), usernameCache.resolve(List.of("bob", "all")));
+        verify(userRepository, times(2)).findAllByUsernameIn(any());
+    }
+
+    @Test
+    void invalidatedNamesAreLoadedAgain() {
+        usernameCache.resolve(List.of("alice", "carol"));
+
+        addUser(3L, "carol");
+        usernameCache.invalidate("carol");
+
+        assertEquals(Map.of("alice", 1L, "carol", 3L), usernameCache.resolve(List.of("alice", "carol")));
+        verify(userRepository).findAllByUsernameIn(Set.of("carol"));
+    }
+}
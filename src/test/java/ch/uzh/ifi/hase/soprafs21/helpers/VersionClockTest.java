@@ -0,0 +1,38 @@
+package ch.uzh.ifi.hase.soprafs21.helpers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the VersionClock
+ */
+class VersionClockTest {
+
+    @Test
+    void versionsAreUniqueAndIncreasing() throws Exception {
+        long before = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(() -> {
+                List<Long> versions = new ArrayList<>();
+                for (int i = 0; i < 10000; i++) versions.add(VersionClock.next());
+                return versions;
+            }));
+        }
+        Set<Long> all = new HashSet<>();
+        for (Future<List<Long>> future : futures) {
+            List<Long> versions = future.get();
+            for (int i = 1; i < versions.size(); i++) assertTrue(versions.get(i - 1) < versions.get(i));
+            all.addAll(versions);
+        }
+        executor.shutdown();
+        assertEquals(40000, all.size());
+        // never behind the wall clock, so versions persisted before a restart stay older
+        assertTrue(Collections.min(all) >= before);
+    }
+}
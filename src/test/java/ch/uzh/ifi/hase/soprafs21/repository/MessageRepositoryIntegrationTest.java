@@ -9,12 +9,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 /**
  * testing if the messageRepository properly stores messages and if they can be found by the methods
@@ -68,62 +70,87 @@ public class MessageRepositoryIntegrationTest {
     }
     
 
-//    @Test
-    public void findAllByMessageChannelId_success() {
+    @Test
+    public void findLatestAndOldest_pageByTimestamp() {
         // given
-        User user = new User();
-
-        user.setUsername("firstname@lastname");
-        user.setToken("1");
-        user.setEmail("firstname@lastname");
-        user.setStatus(UserStatus.IDLE);
-        user.setPassword("pw");
-
         MessageChannel messageChannel = new MessageChannel();
+        entityManager.persist(messageChannel);
+        MessageChannel otherChannel = new MessageChannel();
+        entityManager.persist(otherChannel);
+
+        List<Message> messages = new ArrayList<>();
+        for (long timestamp = 1; timestamp <= 5; timestamp++) {
+            Message message = new Message();
+            message.setText("test " + timestamp);
+            message.setTimestamp(timestamp);
+            message.setMessageChannelId(messageChannel.getMessageChannelId());
+            entityManager.persist(message);
+            messageChannel.addMessage(message);
+            messages.add(message);
+        }
+        Message other = new Message();
+        other.setText("other");
+        other.setTimestamp(3L);
+        other.setMessageChannelId(otherChannel.getMessageChannelId());
+        entityManager.persist(other);
+        entityManager.flush();
 
-        Message message = new Message();
-
-        message.setText("test");
-        message.setTimestamp(2l);
-        message.setSenderId(user.getUserId());
-        messageChannel.addMessage(message);
-
-        Message message2 = new Message();
+        Long channelId = messageChannel.getMessageChannelId();
 
-        message2.setText("test");
-        message2.setTimestamp(2l);
-        message.setSenderId(user.getUserId());
-        messageChannel.addMessage(message2);
+        // when
+        List<Message> latest = messageRepository.findLatest(channelId, Long.MIN_VALUE, Long.MAX_VALUE, PageRequest.of(0, 2));
+        List<Message> before = messageRepository.findLatest(channelId, Long.MIN_VALUE, 4L, PageRequest.of(0, 2));
+        List<Message> since = messageRepository.findOldest(channelId, 2L, Long.MAX_VALUE, PageRequest.of(0, 2));
 
-        Message message3 = new Message();
+        // then
+        assertEquals(List.of(messages.get(4), messages.get(3)), latest);
+        assertEquals(List.of(messages.get(2), messages.get(1)), before);
+        assertEquals(List.of(messages.get(2), messages.get(3)), since);
+    }
 
-        message3.setText("test");
-        message3.setTimestamp(2l);
-        message.setSenderId(user.getUserId());
-        messageChannel.addMessage(message3);
+    private List<Long> postMessages(MessageChannel messageChannel, int count) {
+        List<Long> messageIds = new ArrayList<>();
+        for (long sequenceNumber = 1; sequenceNumber <= count; sequenceNumber++) {
+            Message message = new Message();
+            message.setText("test " + sequenceNumber);
+            message.setTimestamp(sequenceNumber);
+            message.setSequenceNumber(sequenceNumber);
+            messageChannel.addMessage(message);
+            entityManager.persist(message);
+            messageIds.add(message.getMessageId());
+        }
+        return messageIds;
+    }
 
-        entityManager.persist(user);
+    @Test
+    public void chatLog_readFromTheEnd() {
+        // given
+        MessageChannel messageChannel = new MessageChannel();
         entityManager.persist(messageChannel);
-        entityManager.persist(message);
-        entityManager.persist(message2);
-        entityManager.persist(message3);
+        MessageChannel otherChannel = new MessageChannel();
+        entityManager.persist(otherChannel);
+        MessageChannel emptyChannel = new MessageChannel();
+        entityManager.persist(emptyChannel);
+        Long channelId = messageChannel.getMessageChannelId();
+        assertNull(messageRepository.findLastSequenceNumber(channelId));
+
+        List<Long> messageIds = postMessages(messageChannel, 3);
+        List<Long> otherIds = postMessages(otherChannel, 1);
         entityManager.flush();
 
-        List<Message> expected = new ArrayList<Message>();
-        expected.add(message);
-        expected.add(message2);
-        expected.add(message3);
-
-
-        // TODO messages don't know their messageChannel anymore => move this test to MessageChannelRepositoryIntegrationTest
-//        // when
-//        List<Message> found = messageRepository.findAllByMessageChannel(messageChannel);
-//
-//        // then
-//        assertNotNull(found);
-//        assertEquals(found, expected);
+        // when
+        List<MessageRepository.MessageIdView> latest = messageRepository.findLatestIds(List.of(channelId,
+                otherChannel.getMessageChannelId(), emptyChannel.getMessageChannelId()), 2);
 
+        // then
+        assertEquals(3L, messageRepository.findLastSequenceNumber(channelId));
+        List<Long> latestIds = new ArrayList<>();
+        List<Long> latestOtherIds = new ArrayList<>();
+        for (MessageRepository.MessageIdView message : latest) {
+            if (message.getMessageChannelId().equals(channelId)) latestIds.add(message.getMessageId());
+            else latestOtherIds.add(message.getMessageId());
+        }
+        assertEquals(messageIds.subList(1, 3), latestIds);
+        assertEquals(otherIds, latestOtherIds);
     }
-
-
 }
@@ -4,15 +4,21 @@ import ch.uzh.ifi.hase.soprafs21.constant.GameState;
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.jupiter.api.Test;
 
 import javax.persistence.criteria.CriteriaBuilder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * DTOMapperTest
@@ -148,7 +154,55 @@ public class DTOsTest {
 
         // test
         assertEquals(user.getUserId(), sseUpdateDTO.getUserId());
-        assertEquals(new ArrayList<>(), sseUpdateDTO.getLobbies());
+        assertTrue(sseUpdateDTO.getObservedEntities().isEmpty());
+    }
+
+    @Test
+    public void cropCopyLeavesOriginalIntact() {
+
+        // given
+        User user = new User();
+        user.setUserId(2L);
+        user.addIncomingFriendRequest(3L);
+        UserDTO original = DTOMapper.INSTANCE.convertEntityToUserDTO(user);
+
+        // when
+        UserDTO copy = original.copy();
+        copy.crop(3L, null);
+
+        // then
+        assertNull(copy.getIncomingFriendRequests());
+        assertEquals(user.getIncomingFriendRequests(), original.getIncomingFriendRequests());
+    }
+
+    @Test
+    public void entityPatchDiff() {
+
+        // given
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode previous = mapper.createObjectNode();
+        previous.put("title", "old");
+        previous.put("state", "LOBBY");
+        previous.putArray("messages").add(1L).add(2L);
+        previous.putObject("roles").put("1", "@all").put("2", "@all");
+        ObjectNode current = previous.deepCopy();
+        current.put("title", "new");
+        ((ArrayNode) current.get("messages")).add(3L);
+        ((ObjectNode) current.get("roles")).remove("2");
+
+        // when
+        List<EntityPatchDTO> patches = EntityPatchDTO.diff(previous, current);
+
+        // then
+        assertEquals(3, patches.size());
+        assertEquals("replace", patches.get(0).getOp());
+        assertEquals("/title", patches.get(0).getPath());
+        assertEquals("add", patches.get(1).getOp());
+        assertEquals("/messages/-", patches.get(1).getPath());
+        assertEquals(3L, patches.get(1).getValue().asLong());
+        assertEquals("remove", patches.get(2).getOp());
+        assertEquals("/roles/2", patches.get(2).getPath());
+        assertTrue(EntityPatchDTO.diff(current, current).isEmpty());
     }
 
 }
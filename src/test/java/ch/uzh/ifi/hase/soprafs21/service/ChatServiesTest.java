@@ -4,8 +4,10 @@ import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
 import ch.uzh.ifi.hase.soprafs21.constant.PlayerState;
 import ch.uzh.ifi.hase.soprafs21.entity.Game;
 import ch.uzh.ifi.hase.soprafs21.entity.GameSettings;
+import ch.uzh.ifi.hase.soprafs21.entity.Message;
 import ch.uzh.ifi.hase.soprafs21.entity.MessageChannel;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.helpers.UsernameCache;
 import ch.uzh.ifi.hase.soprafs21.repository.GameRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.GameSettingsRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.MessageChannelRepository;
@@ -24,11 +26,16 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.BDDMockito.*;
@@ -52,6 +59,9 @@ public class ChatServiesTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private UsernameCache usernameCache;
+
     private MessageChannel messageChannel_test = new MessageChannel();
     private User gameMaster;
     private User player1;
@@ -77,7 +87,7 @@ public class ChatServiesTest {
     void createMessageChannel_Test() {
         MessageChannel messageChannel = new MessageChannel();
         Mockito.when(messageChannelRepository.save(Mockito.any())).thenReturn(messageChannel);
-        ChatService chatService = new ChatService(messageChannelRepository, messageRepository, userRepository);
+        ChatService chatService = new ChatService(messageChannelRepository, messageRepository, usernameCache);
         assertEquals(messageChannel, chatService.createMessageChannel(gameMaster.getUserId()));
     }
 
@@ -87,7 +97,7 @@ public class ChatServiesTest {
         Mockito.when(messageChannelRepository.save(Mockito.any())).thenReturn(messageChannel);
         Mockito.when(messageChannelRepository.existsById(Mockito.any())).thenReturn(true);
         Mockito.when(messageChannelRepository.findByMessageChannelId(Mockito.any())).thenReturn(messageChannel);
-        ChatService chatService = new ChatService(messageChannelRepository, messageRepository, userRepository);
+        ChatService chatService = new ChatService(messageChannelRepository, messageRepository, usernameCache);
         chatService.createMessageChannel(gameMaster.getUserId());
         assertEquals(messageChannel, chatService.getMessageChannel(messageChannel.getMessageChannelId()));
     }
@@ -98,7 +108,7 @@ public class ChatServiesTest {
         MessageChannel messageChannel1 = new MessageChannel();
         MessageChannel messageChannel = Mockito.spy(messageChannel1);
         messageChannel.setMessageChannelId(1L);
-        ChatService chatService = new ChatService(messageChannelRepository, messageRepository, userRepository);
+        ChatService chatService = new ChatService(messageChannelRepository, messageRepository, usernameCache);
         Mockito.when(messageChannelRepository.existsById(Mockito.anyLong())).thenReturn(true);
         Mockito.when(messageChannelRepository.findByMessageChannelId(Mockito.anyLong())).thenReturn(messageChannel);
         Mockito.when(messageChannel.verifyParticipant(Mockito.any())).thenReturn(true);
@@ -113,7 +123,7 @@ public class ChatServiesTest {
         MessageChannel messageChannel1 = new MessageChannel();
         MessageChannel messageChannel = Mockito.spy(messageChannel1);
         messageChannel.setMessageChannelId(1L);
-        ChatService chatService = new ChatService(messageChannelRepository, messageRepository, userRepository);
+        ChatService chatService = new ChatService(messageChannelRepository, messageRepository, usernameCache);
         Mockito.when(messageChannelRepository.existsById(Mockito.anyLong())).thenReturn(true);
         Mockito.when(messageChannelRepository.findByMessageChannelId(Mockito.anyLong())).thenReturn(messageChannel);
         Mockito.when(messageChannel.verifyParticipant(Mockito.any())).thenReturn(true);
@@ -122,6 +132,59 @@ public class ChatServiesTest {
                 chatService.verifySender(messageChannel.getMessageChannelId(), gameMaster.getUserId()));
     }
 
+    /**
+     * posts a message through a ChatService resolving mentions with a real UsernameCache
+     * @param text
+     * @param users the users the repository knows
+     * @return text of the posted message
+     */
+    private String postWithUsers(String text, User... users) {
+        Mockito.when(userRepository.findAllByUsernameIn(Mockito.any())).thenAnswer(invocation -> {
+            Set<String> usernames = Set.copyOf(invocation.getArgument(0));
+            return List.of(users).stream().filter(user -> usernames.contains(user.getUsername())).collect(Collectors.toList());
+        });
+        Mockito.when(messageRepository.save(Mockito.any())).thenAnswer(invocation -> invocation.getArgument(0));
+        ChatService chatService = new ChatService(messageChannelRepository, messageRepository,
+                new UsernameCache(userRepository, 100, 300));
+        MessageChannel messageChannel = new MessageChannel();
+        messageChannel.setMessageChannelId(1L);
+        Message message = new Message();
+        message.setText(text);
+        return chatService.postMessage(message, gameMaster, messageChannel).getText();
+    }
+
+    @Test
+    void postMessage_mentionsBecomeUserIds() {
+        String text = postWithUsers("hi @testUser and @testUser2, @all @nobody @#7", gameMaster, player1);
+
+        // @testUser2, is not a username, role mentions and unknown names stay as they are
+        assertEquals("hi @#1 and @testUser2, @all @nobody @#7", text);
+        // all names looked up at once, mentions of ids are not looked up
+        verify(userRepository, times(1)).findAllByUsernameIn(Set.of("testUser", "testUser2,", "all", "nobody"));
+    }
+
+    @Test
+    void postMessage_mentionOfAPrefixIsNotALongerName() {
+        User bob1 = new User();
+        bob1.setUserId(3L);
+        bob1.setUsername("bob1");
+
+        assertEquals("@bob and @#3 @bob12", postWithUsers("@bob and @bob1 @bob12", bob1));
+    }
+
+    @Test
+    void postMessage_namesWithRegexMetacharacters() {
+        User dotted = new User();
+        dotted.setUserId(3L);
+        dotted.setUsername("a.b+");
+        User dollar = new User();
+        dollar.setUserId(4L);
+        dollar.setUsername("$1\\");
+
+        // names are matched literally, and ids are inserted literally
+        assertEquals("@#3 @axb @aab @#4 @$1", postWithUsers("@a.b+ @axb @aab @$1\\ @$1", dotted, dollar));
+    }
+
     /**
      * @Test void verifyReaderTestNeg() { MessageChannel messageChannel = new
      *       MessageChannel();
@@ -0,0 +1,44 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.entity.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the GameCommandQueue
+ */
+class GameCommandQueueTest {
+
+    private Message command(String text) {
+        Message message = new Message();
+        message.setText(text);
+        return message;
+    }
+
+    @Test
+    void drainsInOrderAndRestoresInFront() {
+        GameCommandQueue queue = new GameCommandQueue();
+        Message start = command("/start");
+        Message skip = command("/skip");
+        Message ready = command("/r");
+        queue.offer(1L, start);
+        queue.offer(1L, skip);
+        queue.offer(2L, ready);
+
+        Map<Long, List<Message>> drained = queue.drain(Set.of(1L, 3L));
+        assertEquals(Map.of(1L, List.of(start, skip)), drained);
+        assertTrue(queue.drain(Set.of(1L)).isEmpty());
+
+        // a failed tick puts its commands back before the ones posted since
+        Message vote = command("/v @#1024");
+        queue.offer(1L, vote);
+        queue.restore(drained);
+        assertEquals(List.of(start, skip, vote), queue.drain(Set.of(1L)).get(1L));
+        assertEquals(List.of(ready), queue.drain(Set.of(2L)).get(2L));
+    }
+}
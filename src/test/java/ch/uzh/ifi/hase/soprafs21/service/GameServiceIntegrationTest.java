@@ -3,7 +3,9 @@ package ch.uzh.ifi.hase.soprafs21.service;
 import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
 import ch.uzh.ifi.hase.soprafs21.entity.Game;
 import ch.uzh.ifi.hase.soprafs21.entity.GameSettings;
+import ch.uzh.ifi.hase.soprafs21.entity.Message;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.repository.MessageRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
@@ -12,10 +14,17 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -30,6 +39,15 @@ class GameServiceIntegrationTest {
     @Autowired
     private GameService gameService;
 
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     private User gameMaster;
     private User player1;
     private GameSettings gameSettings;
@@ -128,6 +146,43 @@ class GameServiceIntegrationTest {
     }
 
 
+    @Test
+    void tickReplyingToACommand_doesNotBlockChatPosts() throws Exception {
+        Game game = gameService.createGame(gameMaster, gameSettings);
+        Long gameChatId = game.getGameChat().getMessageChannelId();
+        Message command = new Message();
+        command.setSenderId(gameMaster.getUserId());
+        command.setText("/pause");
+
+        // the tick rejects the command, and its transaction stays open until the chat post is through
+        CountDownLatch ticked = new CountDownLatch(1);
+        CountDownLatch posted = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> tick = executor.submit(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            gameService.tickGames(List.of(game.getGameId()), Map.of(game.getGameId(), List.of(command)));
+            ticked.countDown();
+            try {
+                posted.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            assertTrue(ticked.await(10, TimeUnit.SECONDS));
+            Message message = new Message();
+            message.setText("hello");
+            assertDoesNotThrow(() -> chatService.postMessage(message, player1, chatService.getMessageChannel(gameChatId)));
+            posted.countDown();
+            tick.get(10, TimeUnit.SECONDS);
+        } finally {
+            posted.countDown();
+            executor.shutdownNow();
+        }
 
+        // the reply follows once the tick committed
+        List<String> texts = messageRepository.findOldest(gameChatId, Long.MIN_VALUE, Long.MAX_VALUE, PageRequest.of(0, 10))
+                .stream().map(Message::getText).collect(Collectors.toList());
+        assertEquals(List.of("hello", "@#1 /pause: cannot pause game in phase LOBBY"), texts);
+    }
 
 }
\ No newline at end of file
@@ -7,13 +7,16 @@ import ch.uzh.ifi.hase.soprafs21.constant.RoundPhase;
 import ch.uzh.ifi.hase.soprafs21.entity.Game;
 import ch.uzh.ifi.hase.soprafs21.entity.GameRound;
 import ch.uzh.ifi.hase.soprafs21.entity.GameSettings;
+import ch.uzh.ifi.hase.soprafs21.entity.Message;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.helpers.SpringContext;
 import ch.uzh.ifi.hase.soprafs21.repository.GameRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.GameRoundRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.GameSettingsRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
 
 import org.junit.After;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,15 +27,22 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -58,6 +68,22 @@ class GameServiceTest {
     @Mock
     private GameSettingsRepository gameSettingsRepository;
 
+    @Mock
+    private GameStore gameStore;
+
+    @Mock
+    private ChatService chatService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private MemeCatalogue memeCatalogue;
+
+    private Object previousContext;
+
+    private final List<String> memes = List.of("meme1.jpg", "meme2.jpg", "meme3.jpg", "meme4.jpg", "meme5.jpg");
+
     private User gameMaster;
     private User player1;
     private GameSettings gameSettings;
@@ -67,6 +93,12 @@ class GameServiceTest {
     public void setup() {
         MockitoAnnotations.openMocks(this);
 
+        // games find their memes through the context, the real one might be left over from another test
+        previousContext = ReflectionTestUtils.getField(SpringContext.class, "context");
+        new SpringContext().setApplicationContext(applicationContext);
+        when(applicationContext.getBean(MemeCatalogue.class)).thenReturn(memeCatalogue);
+        when(memeCatalogue.peek(any(), any(), any())).thenReturn(memes);
+
         // given
         gameMaster = new User();
         gameMaster.setUserId(1L);
@@ -96,6 +128,11 @@ class GameServiceTest {
         game.adaptSettings(gameSettings);
     }
 
+    @AfterEach
+    public void teardown() {
+        ReflectionTestUtils.setField(SpringContext.class, "context", previousContext);
+    }
+
     @Test
     void adaptGameSettingsSuccess() {
 
@@ -113,6 +150,25 @@ class GameServiceTest {
                 () -> gameService.adaptGameSettings(game.getGameId(), gameMaster, gameSettings));
     }
 
+    @Test
+    void forcedStartWaitsForMemes() {
+        when(memeCatalogue.peek(any(), any(), any())).thenReturn(List.of());
+        Mockito.when(gameRepository.findByGameId(Mockito.any())).thenReturn(game);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> gameService.startGame(game.getGameId(), gameMaster.getUserId(), true));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        assertEquals(GameState.LOBBY, game.getGameState());
+        assertTrue(game.getStartPending());
+        assertNotNull(game.getNextDeadline());
+
+        // the memes arrived, the next update starts the game even though not all players are ready
+        when(memeCatalogue.peek(any(), any(), any())).thenReturn(memes);
+        game.update();
+        assertEquals(GameState.STARTING, game.getGameState());
+        assertFalse(game.getStartPending());
+    }
+
     @Test
     void joinGameTest() {
 
@@ -182,4 +238,52 @@ class GameServiceTest {
         assertEquals(game.getPlayerState(player1.getUserId()), PlayerState.READY);
     }
 
-}
\ No newline at end of file
+    private Message command(User sender, String text) {
+        Message message = new Message();
+        message.setSenderId(sender.getUserId());
+        message.setText(text);
+        return message;
+    }
+
+    @Test
+    void tickGamesRunsQueuedCommandsInOrder() {
+        User gameMaster2 = new User();
+        gameMaster2.setUserId(3L);
+        User player2 = new User();
+        player2.setUserId(4L);
+        Game game2 = new Game();
+        game2.setGameId(2L);
+        game2.initialize(gameMaster2);
+        game2.adaptSettings(gameSettings);
+        game.enrollPlayer(player1, "");
+        game2.enrollPlayer(player2, "");
+
+        when(gameRepository.findAllById(any())).thenReturn(List.of(game, game2));
+        when(userRepository.findAllById(any())).thenReturn(List.of(player1, player2));
+
+        gameService.tickGames(List.of(game.getGameId(), game2.getGameId()), Map.of(
+                game.getGameId(), List.of(command(gameMaster, "/ban @#2"), command(gameMaster, "/forgive @#2")),
+                game2.getGameId(), List.of(command(gameMaster2, "/forgive @#4"), command(gameMaster2, "/ban @#4"))));
+
+        // forgiving only lifts an earlier ban
+        assertEquals(PlayerState.VANISHED, game.getPlayerState(player1.getUserId()));
+        assertEquals(PlayerState.BANNED_FROM_LOBBY, game2.getPlayerState(player2.getUserId()));
+        // the users referenced in all games are loaded at once
+        verify(userRepository, times(1)).findAllById(any());
+        verify(userRepository).findAllById(Set.of(player1.getUserId(), player2.getUserId()));
+    }
+
+    @Test
+    void tickGamesAnswersRejectedCommands() {
+        game.enrollPlayer(player1, "");
+        when(gameRepository.findAllById(any())).thenReturn(List.of(game));
+
+        gameService.tickGames(List.of(game.getGameId()), Map.of(
+                game.getGameId(), List.of(command(player1, "/start"), command(gameMaster, "/pause"))));
+
+        assertEquals(GameState.LOBBY, game.getGameState());
+        verify(chatService).postBotMessage("@#2 /start: you are not the game master of this game", game.getGameChat());
+        verify(chatService).postBotMessage("@#1 /pause: cannot pause game in phase LOBBY", game.getGameChat());
+    }
+
+}
@@ -0,0 +1,157 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
+import ch.uzh.ifi.hase.soprafs21.entity.Game;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the GameStore, writing to a mocked EntityManager
+ */
+class GameStoreTest {
+
+    /**
+     * transactions without resource, only driving the synchronizations.
+     * inner transactions participate in the outer one
+     */
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return TransactionSynchronizationManager.isActualTransactionActive();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {}
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {}
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {}
+    }
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Query query;
+
+    private final NoOpTransactionManager transactionManager = new NoOpTransactionManager();
+
+    private GameStore gameStore;
+    private Game game;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        gameStore = new GameStore(transactionManager, true);
+        ReflectionTestUtils.setField(gameStore, "entityManager", entityManager);
+
+        User gameMaster = new User();
+        gameMaster.setUserId(EntityType.USER.id(1, 0));
+        game = new Game();
+        game.setGameId(EntityType.GAME.id(1, 0));
+        game.initialize(gameMaster);
+
+        when(entityManager.find(Game.class, game.getGameId())).thenReturn(game);
+        when(entityManager.merge(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(entityManager.createQuery(anyString())).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of());
+
+        assertSame(game, gameStore.find(game.getGameId()));
+    }
+
+    @Test
+    void boundaryChangeIsWrittenThrough() {
+        game.kill();
+        gameStore.update(game);
+        verify(entityManager).merge(game);
+
+        // already written, nothing left for the flush
+        gameStore.flush();
+        verify(entityManager).merge(game);
+    }
+
+    @Test
+    void otherChangesAreDeferredToTheFlush() {
+        game.setPlayerReady(game.getGameMaster(), true);
+        gameStore.update(game);
+        verify(entityManager, never()).merge(game);
+
+        gameStore.flush();
+        verify(entityManager).merge(game);
+        gameStore.flush();
+        verify(entityManager).merge(game);
+    }
+
+    @Test
+    void failedFlushIsRetried() {
+        when(entityManager.merge(game))
+                .thenThrow(new IllegalStateException("database gone"))
+                .thenReturn(game);
+        game.setPlayerReady(game.getGameMaster(), true);
+        gameStore.update(game);
+
+        gameStore.flush();
+        verify(entityManager, times(1)).merge(game);
+        gameStore.flush();
+        verify(entityManager, times(2)).merge(game);
+        gameStore.flush();
+        verify(entityManager, times(2)).merge(game);
+    }
+
+    @Test
+    void rolledBackWriteThroughIsWrittenAgain() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            game.kill();
+            gameStore.update(game);
+            status.setRollbackOnly();
+        });
+        verify(entityManager).merge(game);
+
+        // the boundary isn't recorded as written, so the next update writes through again
+        gameStore.update(game);
+        verify(entityManager, times(2)).merge(game);
+        gameStore.flush();
+        verify(entityManager, times(2)).merge(game);
+    }
+
+    @Test
+    void rolledBackWriteThroughIsFlushed() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            game.kill();
+            gameStore.update(game);
+            status.setRollbackOnly();
+        });
+
+        gameStore.flush();
+        verify(entityManager, times(2)).merge(game);
+    }
+}
@@ -0,0 +1,128 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.EntityType;
+import ch.uzh.ifi.hase.soprafs21.entity.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the GameTickEngine, ticking a mocked GameService
+ */
+class GameTickEngineTest {
+
+    @Mock
+    private GameService gameService;
+
+    private GameTickEngine engine;
+
+    // game ids of all ticks, in order
+    private final List<Long> ticked = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(gameService.tickGames(any(), any())).thenAnswer(invocation -> {
+            ticked.addAll(invocation.getArgument(0));
+            return Map.of();
+        });
+    }
+
+    @AfterEach
+    void teardown() {
+        if (engine != null) engine.stop();
+    }
+
+    private GameTickEngine engine(int shards) {
+        return new GameTickEngine(gameService, shards, 256, 200, 10, 3);
+    }
+
+    private Long gameId(long serial) {
+        return EntityType.GAME.id(serial, 0);
+    }
+
+    private Message command(String text) {
+        Message message = new Message();
+        message.setText(text);
+        return message;
+    }
+
+    private void awaitTicks(int count) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 2000;
+        while (ticked.size() < count && System.currentTimeMillis() < timeout) Thread.sleep(5);
+    }
+
+    @Test
+    void gamesAreTickedByTheirShard() throws InterruptedException {
+        Map<Long, String> threads = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            for (Long gameId : invocation.<Collection<Long>>getArgument(0)) threads.put(gameId, Thread.currentThread().getName());
+            ticked.addAll(invocation.getArgument(0));
+            return Map.of();
+        }).when(gameService).tickGames(any(), any());
+        engine = engine(2);
+        engine.start();
+        for (long serial = 1; serial <= 4; serial++) engine.touch(gameId(serial));
+        awaitTicks(4);
+
+        assertEquals("game-tick-1", threads.get(gameId(1)));
+        assertEquals("game-tick-0", threads.get(gameId(2)));
+        assertEquals("game-tick-1", threads.get(gameId(3)));
+        assertEquals("game-tick-0", threads.get(gameId(4)));
+    }
+
+    @Test
+    void onlyTheEarliestDeadlineIsKept() throws InterruptedException {
+        engine = engine(1);
+        engine.start();
+        long now = System.currentTimeMillis();
+        engine.schedule(gameId(1), now + 60000);
+        engine.schedule(gameId(1), now + 50);
+        engine.schedule(gameId(2), now + 50);
+        engine.schedule(gameId(2), now + 60000);
+        awaitTicks(2);
+        Thread.sleep(200);
+
+        assertEquals(2, ticked.size());
+        assertTrue(ticked.containsAll(List.of(gameId(1), gameId(2))));
+    }
+
+    @Test
+    void failingGameDoesNotHoldBackItsBatch() throws InterruptedException {
+        Long good = gameId(1);
+        Long bad = gameId(2);
+        doAnswer(invocation -> {
+            Collection<Long> gameIds = invocation.getArgument(0);
+            if (gameIds.contains(bad)) throw new IllegalStateException("broken game");
+            ticked.addAll(gameIds);
+            return Map.of();
+        }).when(gameService).tickGames(any(), any());
+        engine = engine(1);
+        Message ready = command("/r");
+        Message skip = command("/skip");
+        // queued before the shards start, so both games are due in the same batch
+        engine.submitCommand(good, ready);
+        engine.submitCommand(bad, skip);
+        engine.start();
+
+        verify(gameService, timeout(1000)).tickGames(Set.of(good), Map.of(good, List.of(ready)));
+        verify(gameService, timeout(1000).times(3)).tickGames(Set.of(bad), Map.of(bad, List.of(skip)));
+        verify(gameService, after(200).times(5)).tickGames(any(), any());
+        assertEquals(List.of(good), ticked);
+
+        // given up, its commands are dropped but it's ticked again once it changes
+        engine.touch(bad);
+        verify(gameService, timeout(1000)).tickGames(eq(Set.of(bad)), eq(Map.of()));
+    }
+}
@@ -0,0 +1,71 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.MemeType;
+import org.junit.jupiter.api.Test;
+import util.MemeSource;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the MemeCatalogue
+ */
+class MemeCatalogueTest {
+
+    private final List<String> memes = Arrays.asList("a.jpg", "b.png");
+
+    @Test
+    void peekDoesNotWaitAndFetchesOnce() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger fetches = new AtomicInteger();
+        MemeSource slowSource = (subreddit, memeType) -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return memes;
+        };
+        MemeCatalogue memeCatalogue = new MemeCatalogue(slowSource, 10, 60, 60, 2);
+
+        // not there yet, the second request shares the first fetch
+        assertNull(memeCatalogue.peek("Cats", MemeType.HOT, null));
+        assertNull(memeCatalogue.peek("cats", MemeType.HOT, null));
+
+        release.countDown();
+        List<String> found = null;
+        for (int i = 0; i < 100 && found == null; i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+            found = memeCatalogue.peek("cats", MemeType.HOT, null);
+        }
+        assertEquals(memes, found);
+        assertEquals(1, fetches.get());
+        memeCatalogue.shutdown();
+    }
+
+    @Test
+    void localSourceIsAvailableRightAway() {
+        MemeSource localSource = new MemeSource() {
+            @Override
+            public List<String> fetch(String subreddit, MemeType memeType) {
+                return memes;
+            }
+
+            @Override
+            public boolean isLocal() {
+                return true;
+            }
+        };
+        MemeCatalogue memeCatalogue = new MemeCatalogue(localSource, 10, 60, 60, 1);
+
+        assertEquals(memes, memeCatalogue.peek("cats", MemeType.NEW, null));
+        assertNull(memeCatalogue.peek(null, MemeType.NEW, null));
+        memeCatalogue.shutdown();
+    }
+}
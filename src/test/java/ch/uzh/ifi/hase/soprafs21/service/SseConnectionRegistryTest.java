@@ -0,0 +1,116 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.helpers.Observation;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the SseConnectionRegistry
+ */
+class SseConnectionRegistryTest {
+
+    private final SseConnectionRegistry registry = new SseConnectionRegistry();
+
+    @Test
+    void severalDevicesPerUser() {
+        SseEmitter phone = new SseEmitter();
+        SseEmitter laptop = new SseEmitter();
+        registry.register(1L, phone, false);
+        registry.register(1L, laptop, true);
+        assertEquals(2, registry.getConnections(1L).size());
+
+        assertNotNull(registry.unregister(1L, phone));
+        assertNull(registry.unregister(1L, phone));
+        assertTrue(registry.isConnected(1L));
+        assertNotNull(registry.unregister(1L, laptop));
+        assertFalse(registry.isConnected(1L));
+        assertEquals(0, registry.size());
+    }
+
+    /**
+     * a connection observing exactly its roots
+     */
+    private SseConnection connection(long userId) {
+        Observation observation = new Observation(id -> {
+            UserDTO dto = new UserDTO();
+            dto.setId(id);
+            dto.setFriends(new HashSet<>());
+            return dto;
+        });
+        return registry.register(new SseConnection(userId, new SseEmitter(), false, observation));
+    }
+
+    private void observe(SseConnection connection, Long... ids) {
+        connection.getObservation().update(new HashSet<>(Arrays.asList(ids)), Collections.emptySet());
+        registry.recordObserved(connection);
+    }
+
+    @Test
+    void observersFollowTheRecordedEntities() {
+        SseConnection first = connection(1L);
+        SseConnection second = connection(2L);
+
+        // nothing recorded yet, so both might be interested
+        assertEquals(Set.of(first, second), registry.getObservers(Collections.singleton(10L)));
+
+        observe(first, 10L, 11L);
+        observe(second, 11L);
+        assertEquals(Set.of(first), registry.getObservers(Collections.singleton(10L)));
+        assertEquals(Set.of(first, second), registry.getObservers(Collections.singleton(11L)));
+
+        observe(first, 12L);
+        assertTrue(registry.getObservers(Collections.singleton(10L)).isEmpty());
+        assertEquals(Set.of(second), registry.getObservers(Collections.singleton(11L)));
+
+        registry.unregisterAll(2L);
+        assertTrue(registry.getObservers(Collections.singleton(11L)).isEmpty());
+    }
+
+    @Test
+    void reconnectingClientResumesAfterItsLastEvent() {
+        SseEmitter phone = new SseEmitter();
+        SseConnection first = registry.register(1L, phone, false);
+        first.getClientVersion().put(10L, 100L);
+        String received = first.recordEvent(Set.of(10L));
+        first.getClientVersion().put(20L, 200L);
+        first.recordEvent(Set.of(20L));
+        registry.unregister(1L, phone);
+
+        // unknown streams and other users start over
+        assertNull(registry.takeStream(1L, "unknown:1"));
+        assertNull(registry.takeStream(2L, received));
+
+        SseConnection previous = registry.takeStream(1L, received);
+        assertSame(first, previous);
+        AtomicBoolean completed = new AtomicBoolean();
+        SseEmitter reconnected = new SseEmitter() {
+            @Override
+            public void complete() {
+                completed.set(true);
+                super.complete();
+            }
+        };
+        SseConnection resumed = registry.register(1L, reconnected, false, previous, received);
+        resumed.restore();
+        assertEquals(first.getStreamId(), resumed.getStreamId());
+        // the second event never arrived
+        assertEquals(Map.of(10L, 100L), resumed.getClientVersion());
+        assertEquals(first.getStreamId() + ":3", resumed.recordEvent(Set.of(20L)));
+
+        // reconnecting before the server noticed the disconnect takes over the live connection
+        assertFalse(completed.get());
+        assertSame(resumed, registry.takeStream(1L, received));
+        assertFalse(registry.isConnected(1L));
+        assertTrue(completed.get());
+    }
+}
@@ -0,0 +1,125 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the SseWriter
+ */
+class SseWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SseWriter sseWriter = new SseWriter(1, 2);
+
+    @AfterEach
+    void shutdown() {
+        sseWriter.shutdown();
+    }
+
+    /**
+     * emitter recording the data of every event, blocking the first send until released
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (DataWithMediaType data : builder.build()) {
+                if (MediaType.APPLICATION_JSON.equals(data.getMediaType())) sent.add(String.valueOf(data.getData()));
+            }
+        }
+    }
+
+    private ObjectNode update(long id, String name) {
+        ObjectNode update = objectMapper.createObjectNode();
+        update.with("observedEntities").putObject(String.valueOf(id)).put("name", name);
+        return update;
+    }
+
+    private List<String> awaitSent(RecordingEmitter emitter, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && emitter.sent.size() < count; i++) TimeUnit.MILLISECONDS.sleep(10);
+        return emitter.sent;
+    }
+
+    @Test
+    void slowClientGetsNewestStatePerEntity() throws Exception {
+        RecordingEmitter emitter = new RecordingEmitter();
+        SseConnection connection = new SseConnection(1L, emitter, false);
+
+        // the first one is taken by the writer and blocks, the queue holds two
+        sseWriter.enqueue(connection, new SseWriter.Outbound("Update", update(10, "first"), null));
+        TimeUnit.MILLISECONDS.sleep(50);
+        sseWriter.enqueue(connection, new SseWriter.Outbound("Update", update(10, "second"), null));
+        sseWriter.enqueue(connection, new SseWriter.Outbound("Update", update(20, "other"), null));
+        sseWriter.enqueue(connection, new SseWriter.Outbound("Update", update(10, "third"), null));
+        emitter.release.countDown();
+
+        List<String> sent = awaitSent(emitter, 2);
+        assertEquals(2, sent.size());
+        JsonNode merged = objectMapper.readTree(sent.get(1)).get("observedEntities");
+        assertEquals("third", merged.get("10").get("name").asText());
+        assertEquals("other", merged.get("20").get("name").asText());
+    }
+
+    @Test
+    void patchedEntitiesAreCoalescedToTheirRecordedState() throws Exception {
+        RecordingEmitter emitter = new RecordingEmitter();
+        SseConnection connection = new SseConnection(1L, emitter, true);
+        ObjectNode recorded = objectMapper.createObjectNode().put("name", "patched twice");
+        connection.getSentEntities().put(10L, recorded);
+
+        sseWriter.enqueue(connection, new SseWriter.Outbound("Update", update(30, "blocking"), null));
+        TimeUnit.MILLISECONDS.sleep(50);
+        for (int i = 0; i < 3; i++) {
+            ObjectNode patch = objectMapper.createObjectNode();
+            patch.with("patches").putArray("10").addObject().put("op", "replace");
+            sseWriter.enqueue(connection, new SseWriter.Outbound("Update", patch, null));
+        }
+        emitter.release.countDown();
+
+        List<String> sent = awaitSent(emitter, 2);
+        JsonNode merged = objectMapper.readTree(sent.get(1));
+        assertFalse(merged.has("patches"));
+        assertEquals(recorded, merged.get("observedEntities").get("10"));
+    }
+
+    @Test
+    void closedConnectionDropsEvents() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.release.countDown();
+        SseConnection connection = new SseConnection(1L, emitter, false);
+        sseWriter.close(connection);
+
+        sseWriter.enqueue(connection, new SseWriter.Outbound("Update", update(10, "lost"), null));
+        assertFalse(sseWriter.sendHeartbeat(connection));
+        assertTrue(connection.getOutbound().isEmpty());
+    }
+
+    @Test
+    void utf8LengthWithoutEncoding() {
+        for (String text : List.of("", "{\"name\":\"alice\"}", "Zürich", "€ 5", "meme \uD83D\uDE02", "\uD83D")) {
+            assertEquals(text.getBytes(StandardCharsets.UTF_8).length, SseWriter.utf8Length(text), text);
+        }
+    }
+}
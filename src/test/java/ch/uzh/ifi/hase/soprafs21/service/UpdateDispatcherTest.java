@@ -0,0 +1,154 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityChangeEvent;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityDTOCache;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityJsonCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the UpdateDispatcher, with the services it pushes through mocked
+ */
+@SpringJUnitConfig(UpdateDispatcherTest.Config.class)
+class UpdateDispatcherTest {
+
+    // not a @Configuration, so the application's component scan doesn't pick it up
+    @EnableTransactionManagement
+    static class Config {
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new NoOpTransactionManager();
+        }
+
+        @Bean
+        UpdateDispatcher updateDispatcher(UserService userService, LobbyDirectory lobbyDirectory,
+                                          EntityDTOCache entityDTOCache, EntityJsonCache entityJsonCache) {
+            return new UpdateDispatcher(userService, lobbyDirectory, entityDTOCache, entityJsonCache);
+        }
+    }
+
+    /**
+     * transactions without resource, only driving the synchronizations
+     */
+    static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {}
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {}
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {}
+    }
+
+    @MockBean
+    private UserService userService;
+
+    @MockBean
+    private LobbyDirectory lobbyDirectory;
+
+    @MockBean
+    private EntityDTOCache entityDTOCache;
+
+    @MockBean
+    private EntityJsonCache entityJsonCache;
+
+    @Autowired
+    private ApplicationEventPublisher publisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transaction;
+
+    @BeforeEach
+    void setup() {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void changesArePushedOnlyAfterCommit() {
+        transaction.executeWithoutResult(status -> {
+            publisher.publishEvent(new EntityChangeEvent(1L));
+            verifyNoInteractions(entityDTOCache, entityJsonCache, userService, lobbyDirectory);
+        });
+
+        verify(userService, timeout(1000)).pushUpdates(Set.of(1L));
+        verify(lobbyDirectory).refresh(Set.of(1L), Map.of());
+    }
+
+    @Test
+    void rolledBackChangesAreNotPushed() throws InterruptedException {
+        transaction.executeWithoutResult(status -> {
+            publisher.publishEvent(new EntityChangeEvent(1L));
+            status.setRollbackOnly();
+        });
+        // a change pushed afterwards shows that the dispatcher had its chance
+        publisher.publishEvent(new EntityChangeEvent(2L));
+
+        verify(userService, timeout(1000)).pushUpdates(Set.of(2L));
+        verify(entityDTOCache, never()).invalidate(1L);
+        verify(userService, never()).pushUpdates(Mockito.argThat(ids -> ids.contains(1L)));
+    }
+
+    @Test
+    void cachesAreInvalidatedBeforeThePush() {
+        publisher.publishEvent(new EntityChangeEvent(3L, true));
+
+        verify(userService, timeout(1000)).pushUpdates(Set.of(3L));
+        InOrder inOrder = inOrder(entityDTOCache, entityJsonCache, lobbyDirectory, userService);
+        inOrder.verify(entityDTOCache).invalidate(3L);
+        inOrder.verify(entityJsonCache).invalidate(3L);
+        inOrder.verify(lobbyDirectory).refresh(Set.of(3L), Map.of(3L, true));
+        inOrder.verify(userService).pushUpdates(Set.of(3L));
+    }
+
+    @Test
+    void changesArrivingDuringAPushAreCoalesced() throws InterruptedException {
+        CountDownLatch pushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            pushing.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return null;
+        }).when(userService).pushUpdates(Set.of(4L));
+
+        publisher.publishEvent(new EntityChangeEvent(4L));
+        assertTrue(pushing.await(5, TimeUnit.SECONDS));
+        publisher.publishEvent(new EntityChangeEvent(5L));
+        publisher.publishEvent(new EntityChangeEvent(6L));
+        publisher.publishEvent(new EntityChangeEvent(5L));
+        release.countDown();
+
+        verify(userService, timeout(1000)).pushUpdates(Set.of(5L, 6L));
+        verify(userService, after(200).times(2)).pushUpdates(Mockito.anySet());
+    }
+}
@@ -2,17 +2,26 @@ package ch.uzh.ifi.hase.soprafs21.service;
 
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.helpers.EntityJsonCache;
+import ch.uzh.ifi.hase.soprafs21.helpers.UsernameCache;
+import ch.uzh.ifi.hase.soprafs21.repository.GameRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.MockitoAnnotations;
 import org.mockito.internal.matchers.Null;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.BDDMockito.given;
@@ -23,6 +32,21 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private SseWriter sseWriter;
+
+    @Mock
+    private LobbyDirectory lobbyDirectory;
+
+    @Mock
+    private EntityJsonCache entityJsonCache;
+
+    @Mock
+    private UsernameCache usernameCache;
+
+    @Spy
+    private SseConnectionRegistry connections = new SseConnectionRegistry();
+
     @InjectMocks
     private UserService userService;
 
@@ -115,6 +139,17 @@ public class UserServiceTest {
         assertDoesNotThrow(()->userService.removeSubscriber(1L));
     }
 
+    @Test
+    public void removeSubscriber_otherDeviceStaysOnline(){
+        SseEmitter phone = new SseEmitter();
+        userService.putSubscriber(1L, phone);
+        userService.putSubscriber(1L, new SseEmitter());
+
+        userService.removeSubscriber(1L, phone);
+        assertEquals(UserStatus.IDLE, testUser.getStatus());
+        assertEquals(1, connections.getConnections(1L).size());
+    }
+
     @Test
     public void verifyUser_success(){
         assertEquals(testUser, userService.verifyUser(testUser.getUserId(), testUser.getToken()));
@@ -186,5 +221,26 @@ public class UserServiceTest {
     }
 
 
+    @Test
+    public void updateUser_rename_invalidatesCachedNames() {
+        UsernameCache cache = new UsernameCache(userRepository, 100, 300);
+        UserService service = new UserService(userRepository, Mockito.mock(GameRepository.class), sseWriter,
+                connections, lobbyDirectory, entityJsonCache, cache);
+        Mockito.when(userRepository.findAllByUsernameIn(Mockito.any())).thenAnswer(invocation -> {
+            List<User> found = new ArrayList<>();
+            for (String username : invocation.<Collection<String>>getArgument(0)) {
+                if (username.equals(testUser.getUsername())) found.add(testUser);
+            }
+            return found;
+        });
+        assertEquals(Map.of("testUsername", 1L), cache.resolve(List.of("testUsername", "renamed")));
+
+        User update = new User();
+        update.setUsername("renamed");
+        service.updateUser(testUser, update);
+
+        // both names were cached, the old one with the user and the new one without
+        assertEquals(Map.of("renamed", 1L), cache.resolve(List.of("testUsername", "renamed")));
+    }
 
 }